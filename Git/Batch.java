@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs many commands read from an input stream in a single process, as
+ *  "java gitlet.Main --batch" does with the standard input.
+ *
+ *  By default each line holds one command, its arguments separated by
+ *  blanks as in a shell: an argument may be quoted with '...' or "...",
+ *  and a backslash quotes the next character, outside single quotes.
+ *  Blank lines and lines starting with '#' are skipped. With "-z", every
+ *  argument instead ends with a NUL byte, and every command with an
+ *  empty argument, so arguments may hold any characters but NUL.
+ *
+ *  Commands are run one after the other against one Repository, whose
+ *  caches stay warm throughout. The index is only written at each commit
+ *  and at the end, rather than by every command changing it. A command
+ *  that fails prints its error message, as it would on its own, and the
+ *  following commands still run.
+ *
+ *  @author enmanuel hernandez
+ */
+class Batch {
+
+    /** The repository the commands are run against. */
+    private final Repository repository;
+    /** True iff arguments end in NUL bytes rather than being separated by
+     *  blanks on lines. */
+    private final boolean nulTerminated;
+
+    /** A batch running commands against REPOSITORY, whose arguments end in
+     *  NUL bytes iff NULTERMINATED. */
+    Batch(Repository repository, boolean nulTerminated) {
+        this.repository = repository;
+        this.nulTerminated = nulTerminated;
+    }
+
+    /** Run every command read from IN. */
+    void run(InputStream in) {
+        repository.deferWrites();
+        try {
+            if (nulTerminated) {
+                InputStream bytes = new BufferedInputStream(in);
+                for (List<String> args = readCommand(bytes); args != null;
+                     args = readCommand(bytes)) {
+                    execute(args);
+                }
+            } else {
+                BufferedReader lines = new BufferedReader(
+                    new InputStreamReader(in, StandardCharsets.UTF_8));
+                for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                    if (line.isBlank() || line.stripLeading().startsWith("#")) {
+                        continue;
+                    }
+                    try {
+                        execute(split(line));
+                    } catch (GitletException excp) {
+                        System.out.println(excp.getMessage());
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read commands: %s", excp.getMessage());
+        } finally {
+            repository.flush();
+        }
+    }
+
+    /** Run the command in ARGS, printing its error message if it fails. */
+    private void execute(List<String> args) {
+        try {
+            Main.run(repository, args.toArray(new String[0]));
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Returns the arguments of the next command in IN, each ending with a
+     *  NUL byte and the last followed by another, or null at the end of IN.
+     *  A final command missing its terminators is still returned. */
+    private static List<String> readCommand(InputStream in) throws IOException {
+        List<String> args = new ArrayList<>();
+        ByteArrayOutputStream arg = new ByteArrayOutputStream();
+        for (int b = in.read(); b >= 0; b = in.read()) {
+            if (b != 0) {
+                arg.write(b);
+            } else if (arg.size() == 0) {
+                return args;
+            } else {
+                args.add(arg.toString(StandardCharsets.UTF_8));
+                arg.reset();
+            }
+        }
+        if (arg.size() > 0) {
+            args.add(arg.toString(StandardCharsets.UTF_8));
+        }
+        return args.isEmpty() ? null : args;
+    }
+
+    /** Returns the blank-separated arguments of LINE, with quotes and
+     *  backslashes removed. */
+    static List<String> split(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean inArg = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    arg.append(c);
+                }
+            } else if (c == '\\' && i + 1 < line.length()) {
+                i += 1;
+                arg.append(line.charAt(i));
+                inArg = true;
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    arg.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inArg = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                arg.append(c);
+                inArg = true;
+            }
+        }
+        if (quote != 0) {
+            throw Utils.error("Unterminated quote in: %s", line);
+        }
+        if (inArg) {
+            args.add(arg.toString());
+        }
+        return args;
+    }
+}
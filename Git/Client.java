@@ -0,0 +1,76 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/** A thin front end to Gitlet that passes each command to the {@link
+ *  Daemon} of the repository in the current directory, if one is running,
+ *  and copies its output to the standard output and error. Without a
+ *  daemon, or with "--trace", whose report is of this process's own work,
+ *  or with "--batch", whose commands come from this process's standard
+ *  input, the command is run here, exactly as by Main.
+ *
+ *  Usage: java gitlet.Client ARGS, with the same ARGS as for Main.
+ *
+ *  @author enmanuel hernandez
+ */
+public class Client {
+
+    /** Run the command in ARGS through the daemon, or here if there is no
+     *  daemon, exiting with the command's status. */
+    public static void main(String[] args) {
+        File socket = Daemon.socket(new File(System.getProperty("user.dir")));
+        boolean local = args.length > 0
+            && (args[0].equals("--trace") || args[0].equals("--batch"));
+        if (socket.exists() && !local) {
+            SocketChannel channel;
+            try {
+                channel = SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath()));
+            } catch (IOException excp) {
+                // The daemon is gone
+                channel = null;
+            }
+            if (channel != null) {
+                System.exit(forward(channel, args));
+            }
+        }
+        Main.main(args);
+    }
+
+    /** Send the command in ARGS over CHANNEL, copy the output sent back
+     *  and return the command's exit status. */
+    private static int forward(SocketChannel channel, String[] args) {
+        try (channel) {
+            Daemon.writeRequest(new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel))), args);
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel)));
+            byte[] buffer = new byte[ObjectStore.BUFFER_SIZE];
+            for (int kind = in.readByte(); kind != Daemon.EXIT; kind = in.readByte()) {
+                PrintStream out = kind == Daemon.STDERR ? System.err : System.out;
+                for (int left = in.readInt(); left > 0; ) {
+                    int n = in.read(buffer, 0, Math.min(left, buffer.length));
+                    if (n < 0) {
+                        throw new IOException("truncated response");
+                    }
+                    out.write(buffer, 0, n);
+                    left -= n;
+                }
+            }
+            System.out.flush();
+            System.err.flush();
+            return in.readInt();
+        } catch (IOException excp) {
+            System.err.println("Lost connection to the Gitlet daemon: " + excp.getMessage());
+            return 1;
+        }
+    }
+}
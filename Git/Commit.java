@@ -1,8 +1,11 @@
 package gitlet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -16,50 +19,46 @@ import java.util.TimeZone;
  * A commit details the changes made to the project's files and associated metadata during a certain snapshot of the files.
  *  The commit object stores the following information:
  *  * - Commit message: The description of the changes made in this commit.
- *  * - Commit time: The timestamp when the commit was created.
+ *  * - Commit time: The timestamp when the commit was created, in milliseconds since the epoch.
  *  * - Branch: The name of the branch to which this commit belongs.
- *  * - File list: A list of files included in this commit.
  *  * - Hash code: The unique identifier for this commit.
- *  * - Blob: A list of hashed file contents corresponding to the files in the commit.
- *  * - List of changed files in the current working directory (CWD).
- *  * - List of contents of the current working directory.
- *  * - List of file names in the commit.
+ *  * - Parents: The hash codes of the commits this commit was made on top of.
+ *  * - Tree: The ID of the tree holding the snapshot of the tracked files.
+ *
+ *  Commits are stored in a versioned binary encoding (see {@link #encode()})
+ *  whose SHA-1 is the commit's hash code. Object IDs are written as raw
+ *  20-byte values and strings as length-prefixed UTF-8.
  *
  *  @author enmanuel hernandez
  */
-public class Commit implements Serializable {
+public class Commit {
+    /** The object type under which commits are stored. */
+    static final String TYPE = "commit";
+    /** The version of the encoding written by encode. */
+    static final int FORMAT_VERSION = 2;
+    /** The length in bytes of a raw SHA-1 ID. */
+    static final int RAW_ID_LENGTH = 20;
+
     private String message;
-    private String time;
-    private Date date;
-    private SimpleDateFormat timeFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy -0800");
+    private long timestamp;
     private String branch;
-    private ArrayList<File> fileList;
     private String hashCode;
-    private ArrayList<String> blob;
-    private List<String> listOfCWD;
-    private ArrayList<String> cwdContents;
-    private ArrayList<String> fileNames = new ArrayList<>();
+    private ArrayList<String> parents;
+    private String tree;
 
     // Constructor for the Commit class
 
-    Commit(String message1, String branch1, ArrayList<File> files, ArrayList<String> blob1,
-           List<String> listOfCWD1, ArrayList<String> cwdContents1) {
-        timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        date = new Date();
+    Commit(String message1, String branch1, ArrayList<String> parents1, String tree1) {
+        this(message1, System.currentTimeMillis(), branch1, parents1, tree1);
+    }
 
+    Commit(String message1, long timestamp1, String branch1, ArrayList<String> parents1,
+           String tree1) {
         message = message1;
+        timestamp = timestamp1;
         branch = branch1;
-        fileList = files;
-
-        time = timeFormat.format(date.getTime());
-
-        blob = blob1;
-        listOfCWD = listOfCWD1;
-        cwdContents = cwdContents1;
-
-        for (File f : fileList) {
-            this.fileNames.add(f.getName());
-        }
+        parents = parents1;
+        tree = tree1;
     }
 
     public List<String> getFileContents(File file) throws IOException {
@@ -69,6 +68,73 @@ public class Commit implements Serializable {
         return Arrays.asList(lines);
     }
 
+    /* ENCODING */
+
+    /** Returns the binary encoding of this commit. The hash code itself is
+     *  not part of the encoding, since it is the SHA-1 of it. */
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(timestamp);
+            writeString(out, message);
+            writeString(out, branch);
+            out.writeByte(parents.size());
+            for (String parent : parents) {
+                out.write(Utils.hexToBytes(parent));
+            }
+            out.write(Utils.hexToBytes(tree));
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+    }
+
+    /** Returns the commit with hash code ID whose encoding is BYTES. */
+    static Commit decode(String id, byte[] bytes) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw Utils.error("Unsupported commit format %d.", version);
+            }
+            long timestamp = in.readLong();
+            String message = readString(in);
+            String branch = readString(in);
+            int numParents = in.readUnsignedByte();
+            ArrayList<String> parents = new ArrayList<>(numParents);
+            for (int i = 0; i < numParents; i += 1) {
+                parents.add(readID(in));
+            }
+            String tree = readID(in);
+            Commit commit = new Commit(message, timestamp, branch, parents, tree);
+            commit.setHash(id);
+            return commit;
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt commit %s.", id);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] utf8 = new byte[in.readInt()];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static String readID(DataInputStream in) throws IOException {
+        byte[] raw = new byte[RAW_ID_LENGTH];
+        in.readFully(raw);
+        return Utils.bytesToHex(raw);
+    }
+
     // Getters and Setters for various attributes of the Commit class
 
     public String getMessage() {
@@ -79,10 +145,6 @@ public class Commit implements Serializable {
         return branch;
     }
 
-    public ArrayList<File> getFileList() {
-        return fileList;
-    }
-
     public String getHash() {
         return hashCode;
     }
@@ -91,33 +153,36 @@ public class Commit implements Serializable {
         this.hashCode = h;
     }
 
-    public ArrayList<String> getBlob() {
-        return blob;
+    public ArrayList<String> getParents() {
+        return parents;
     }
 
-    public List<String> getCWD() {
-        return listOfCWD;
+    /** Returns the hash code of the first parent, or null for the initial commit. */
+    public String getParent() {
+        return parents.isEmpty() ? null : parents.get(0);
     }
 
-    public ArrayList<String> cwdCons() {
-        return cwdContents;
+    /** Returns the ID of the tree holding this commit's files. */
+    public String getTree() {
+        return tree;
     }
 
-
+    /** Returns the commit time formatted for log output. */
     public String getTime() {
-        return time;
-    }
-
-    public Date getDate() {
-        return date;
+        SimpleDateFormat timeFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy -0800");
+        timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return timeFormat.format(new Date(timestamp));
     }
 
-    public void setDate(int d) {
-        date.setTime(d);
+    public long getTimestamp() {
+        return timestamp;
     }
 
-    public void setTime(Date d) {
-        time = timeFormat.format(d);
+    /** Returns an estimate of the bytes of heap this commit takes: its
+     *  object headers and fields, its strings, and its IDs as 40 hex
+     *  characters each. */
+    long weight() {
+        return 160 + message.length() + branch.length() + 80L * (parents.size() + 2);
     }
 
-}
\ No newline at end of file
+}
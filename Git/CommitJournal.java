@@ -0,0 +1,148 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static gitlet.Utils.*;
+
+/** An append-only record of every commit ever made in a repository.
+ *
+ *  Each commit is stored as a four-byte big-endian length, the commit's
+ *  raw 20-byte ID and its binary encoding, and the same length again.
+ *  Appending a commit is a single write to the end of the file. Readers
+ *  stream the records from the end back, newest first, as the list of all
+ *  commits always was, using the trailing lengths to find where each
+ *  record begins, and hold no more than a block of them in memory.
+ *
+ *  A record left incomplete by an interrupted append, which can only be
+ *  the last, has lengths that do not match, or that reach past the end of
+ *  the file. Readers ignore it, and the next append cuts it off before
+ *  writing, so that no later record is lost behind it.
+ *
+ *  @author enmanuel hernandez
+ */
+class CommitJournal {
+
+    /** The size of the blocks read from the end of the journal. */
+    private static final int BLOCK = 1 << 16;
+    /** The bytes taken by a record besides its ID and encoding. */
+    private static final int FRAME = 2 * Integer.BYTES;
+
+    /** The file holding the journal. */
+    private final File file;
+
+    /** A journal stored in FILE. */
+    CommitJournal(File file) {
+        this.file = file;
+    }
+
+    /** Append COMMIT to the end of the journal, first cutting off any
+     *  incomplete record there. */
+    void append(Commit commit) {
+        byte[] id = hexToBytes(commit.getHash());
+        byte[] encoding = commit.encode();
+        int length = id.length + encoding.length;
+        ByteBuffer buf = ByteBuffer.allocate(FRAME + length);
+        buf.putInt(length).put(id).put(encoding).putInt(length);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            long end = end(out);
+            if (end < out.length()) {
+                out.setLength(end);
+            }
+            out.seek(end);
+            out.write(buf.array());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Apply ACTION to every commit in the journal, newest first. */
+    void forEach(Consumer<Commit> action) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long end = end(in);
+            byte[] block = new byte[0];
+            long blockStart = end;
+            while (end > 0) {
+                if (end - blockStart < Integer.BYTES) {
+                    blockStart = Math.max(0, end - BLOCK);
+                    block = read(in, blockStart, (int) (end - blockStart));
+                }
+                ByteBuffer buf = ByteBuffer.wrap(block);
+                int length = buf.getInt((int) (end - blockStart) - Integer.BYTES);
+                long start = end - FRAME - length;
+                if (length < Commit.RAW_ID_LENGTH || start < 0) {
+                    throw error("Corrupt commit journal.");
+                }
+                byte[] record;
+                int offset;
+                if (start >= blockStart) {
+                    record = block;
+                    offset = (int) (start - blockStart) + Integer.BYTES;
+                } else {
+                    // A record larger than what is left of the block
+                    record = read(in, start + Integer.BYTES, length);
+                    offset = 0;
+                    blockStart = start;
+                    block = new byte[0];
+                }
+                String id = bytesToHex(Arrays.copyOfRange(record, offset,
+                                                          offset + Commit.RAW_ID_LENGTH));
+                action.accept(Commit.decode(id, Arrays.copyOfRange(
+                    record, offset + Commit.RAW_ID_LENGTH, offset + length)));
+                end = start;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns LENGTH bytes of IN from position START. */
+    private static byte[] read(RandomAccessFile in, long start, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.seek(start);
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /** Returns the end of the last complete record of the journal IN. The
+     *  last record is checked by its lengths, and only if it is incomplete
+     *  are the records read from the start to find the last good one. */
+    private static long end(RandomAccessFile in) throws IOException {
+        long size = in.length();
+        if (size == 0 || isRecord(in, size)) {
+            return size;
+        }
+        long end = 0;
+        while (true) {
+            if (size - end < FRAME + Commit.RAW_ID_LENGTH) {
+                return end;
+            }
+            in.seek(end);
+            long next = end + FRAME + in.readInt();
+            if (next <= end + FRAME || next > size || !isRecord(in, next)) {
+                return end;
+            }
+            end = next;
+        }
+    }
+
+    /** Returns true iff a record of the journal IN ends at END, with a
+     *  trailing length matching the one it starts with. */
+    private static boolean isRecord(RandomAccessFile in, long end) throws IOException {
+        if (end < FRAME + Commit.RAW_ID_LENGTH) {
+            return false;
+        }
+        in.seek(end - Integer.BYTES);
+        int length = in.readInt();
+        long start = end - FRAME - length;
+        if (length < Commit.RAW_ID_LENGTH || start < 0) {
+            return false;
+        }
+        in.seek(start);
+        return in.readInt() == length;
+    }
+}
@@ -0,0 +1,312 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** A long-running server executing the commands of one repository, so that
+ *  they pay for starting the JVM, loading classes and reading the
+ *  repository's state only once.
+ *
+ *  Started with "java gitlet.Main daemon" in the working directory, it
+ *  listens on the Unix domain socket .gitlet/daemon.sock, where {@link
+ *  Client} sends it the arguments of each command and receives the
+ *  command's output. Requests are read without blocking, from any number
+ *  of clients at once, and a client that has not sent its whole request
+ *  within REQUEST_TIMEOUT milliseconds is dropped, so an idle connection
+ *  holds up no one. Commands are run one at a time, against a single
+ *  Repository whose caches stay warm between them; the caches check the
+ *  stat data of the files they were read from before each use, so changes
+ *  made by other processes are seen at once. After a failed command,
+ *  everything cached is dropped.
+ *
+ *  A request is the number of arguments, then each argument as its length
+ *  and UTF-8 bytes. The response is a sequence of frames, each a channel
+ *  byte, STDOUT or STDERR, followed by a length and that many bytes of
+ *  output, ended by an EXIT byte and the command's exit status.
+ *
+ *  The daemon stops when its socket is deleted, which it checks every
+ *  POLL milliseconds, or when it is killed.
+ *
+ *  @author enmanuel hernandez
+ */
+class Daemon {
+
+    /** The name of the socket in the .gitlet directory. */
+    static final String SOCKET = "daemon.sock";
+    /** How often the daemon checks that its socket is still there, in
+     *  milliseconds. */
+    static final int POLL = 1000;
+    /** How long a client may take to send its request, in milliseconds. */
+    static final int REQUEST_TIMEOUT = 10000;
+    /** The most bytes a request may take. */
+    static final int MAX_REQUEST = 1 << 20;
+
+    /** The channel byte of a frame of standard output. */
+    static final int STDOUT = 1;
+    /** The channel byte of a frame of standard error. */
+    static final int STDERR = 2;
+    /** The channel byte ending a response, followed by the exit status. */
+    static final int EXIT = 0;
+
+    /** The repository whose commands are run. */
+    private final Repository repository;
+    /** The socket listened on. */
+    private final File socket;
+
+    /** A daemon running the commands of REPOSITORY. */
+    Daemon(Repository repository) {
+        this.repository = repository;
+        this.socket = join(repository.gitletDir(), SOCKET);
+    }
+
+    /** Returns the socket of the daemon for the working directory ROOT. */
+    static File socket(File root) {
+        return join(root, ".gitlet", SOCKET);
+    }
+
+    /** Serve commands until the socket is deleted. */
+    void serve() {
+        if (socket.exists()) {
+            try {
+                SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath())).close();
+            } catch (IOException excp) {
+                // Left behind by a daemon that did not stop cleanly
+                socket.delete();
+            }
+            if (socket.exists()) {
+                throw error("A Gitlet daemon is already running.");
+            }
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             Selector selector = Selector.open()) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            Runtime.getRuntime().addShutdownHook(new Thread(socket::delete));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            while (socket.exists()) {
+                selector.select(POLL);
+                List<SelectionKey> complete = new ArrayList<>();
+                for (Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                     keys.hasNext(); ) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isAcceptable()) {
+                        accept(server, selector);
+                    } else if (key.isReadable() && read(key)) {
+                        complete.add(key);
+                    }
+                }
+                expire(selector);
+                if (complete.isEmpty()) {
+                    continue;
+                }
+                // Deregister the clients, so that their responses can be written blocking
+                for (SelectionKey key : complete) {
+                    key.cancel();
+                }
+                selector.selectNow();
+                for (SelectionKey key : complete) {
+                    try (SocketChannel client = (SocketChannel) key.channel()) {
+                        client.configureBlocking(true);
+                        handle(client, ((Request) key.attachment()).args);
+                    } catch (IOException excp) {
+                        // The client went away; its command was run all the same
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Cannot start the daemon: %s", excp.getMessage());
+        }
+    }
+
+    /** A request being read from a client. */
+    private static class Request {
+        /** When the whole request must have arrived, as by System.nanoTime. */
+        final long deadline = System.nanoTime() + REQUEST_TIMEOUT * 1_000_000L;
+        /** The bytes read so far. */
+        ByteBuffer bytes = ByteBuffer.allocate(256);
+        /** The arguments of the command, once the whole request is read. */
+        String[] args;
+    }
+
+    /** Accept a client of SERVER, if one is waiting, and register it with
+     *  SELECTOR to read its request. */
+    private static void accept(ServerSocketChannel server, Selector selector) throws IOException {
+        SocketChannel client = server.accept();
+        if (client != null) {
+            client.configureBlocking(false);
+            client.register(selector, SelectionKey.OP_READ, new Request());
+        }
+    }
+
+    /** Read what the client of KEY has sent, and return true iff its
+     *  request is now complete. A client that closes its connection early
+     *  or sends a malformed request is dropped. */
+    private static boolean read(SelectionKey key) {
+        SocketChannel client = (SocketChannel) key.channel();
+        Request request = (Request) key.attachment();
+        try {
+            if (!request.bytes.hasRemaining()) {
+                if (request.bytes.capacity() >= MAX_REQUEST) {
+                    throw new IOException("request too long");
+                }
+                ByteBuffer larger = ByteBuffer.allocate(2 * request.bytes.capacity());
+                request.bytes = larger.put(request.bytes.flip());
+            }
+            if (client.read(request.bytes) < 0) {
+                throw new IOException("connection closed");
+            }
+            request.args = parseRequest(request.bytes.duplicate().flip());
+            return request.args != null;
+        } catch (IOException excp) {
+            close(client);
+            return false;
+        }
+    }
+
+    /** Returns the arguments of the request in BYTES, or null if it is not
+     *  all there yet. */
+    private static String[] parseRequest(ByteBuffer bytes) throws IOException {
+        if (bytes.remaining() < Integer.BYTES) {
+            return null;
+        }
+        int count = bytes.getInt();
+        if (count < 0 || count > MAX_REQUEST / Integer.BYTES) {
+            throw new IOException("malformed request");
+        }
+        String[] args = new String[count];
+        for (int i = 0; i < count; i += 1) {
+            if (bytes.remaining() < Integer.BYTES) {
+                return null;
+            }
+            int length = bytes.getInt();
+            if (length < 0 || length > MAX_REQUEST) {
+                throw new IOException("malformed request");
+            }
+            if (bytes.remaining() < length) {
+                return null;
+            }
+            byte[] arg = new byte[length];
+            bytes.get(arg);
+            args[i] = new String(arg, StandardCharsets.UTF_8);
+        }
+        return args;
+    }
+
+    /** Drop the clients registered with SELECTOR whose requests are overdue. */
+    private static void expire(Selector selector) {
+        long now = System.nanoTime();
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof Request
+                && now - ((Request) key.attachment()).deadline > 0) {
+                close((SocketChannel) key.channel());
+            }
+        }
+    }
+
+    /** Close CLIENT, whose connection is of no more use. */
+    private static void close(SocketChannel client) {
+        try {
+            client.close();
+        } catch (IOException excp) {
+            // Nothing more is sent over it
+        }
+    }
+
+    /** Run the command in ARGS, sent by CLIENT, sending back its output. */
+    private void handle(SocketChannel client, String[] args) throws IOException {
+        DataOutputStream response = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+        PrintStream out = new PrintStream(new BufferedOutputStream(new Frames(STDOUT, response)),
+                                          false, StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(new BufferedOutputStream(new Frames(STDERR, response)),
+                                          false, StandardCharsets.UTF_8);
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        int status = 0;
+        System.setOut(out);
+        System.setErr(err);
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                throw error("A Gitlet daemon is already running.");
+            }
+            Main.run(repository, args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            repository.invalidate();
+        } catch (RuntimeException excp) {
+            excp.printStackTrace();
+            repository.invalidate();
+            status = 1;
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        out.flush();
+        err.flush();
+        response.writeByte(EXIT);
+        response.writeInt(status);
+        response.flush();
+    }
+
+    /** Write the request running the command in ARGS to OUT. */
+    static void writeRequest(DataOutputStream out, String[] args) throws IOException {
+        out.writeInt(args.length);
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.flush();
+    }
+
+    /** A stream of output sent back in frames of one channel. Each write
+     *  becomes a frame, so the stream is best used through a buffer. */
+    private static class Frames extends OutputStream {
+        /** The channel byte of the frames. */
+        private final int channel;
+        /** The response the frames are written to. */
+        private final DataOutputStream response;
+
+        Frames(int channel, DataOutputStream response) {
+            this.channel = channel;
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            response.writeByte(channel);
+            response.writeInt(len);
+            response.write(bytes, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            response.flush();
+        }
+    }
+}
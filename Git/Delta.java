@@ -0,0 +1,149 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Copy/insert deltas between two versions of an object.
+ *
+ *  A delta describes a target in terms of a base: it starts with the
+ *  lengths of the base and the target as variable-length integers, then
+ *  holds a sequence of instructions. An instruction byte of COPY is
+ *  followed by an offset and a length, and copies that range of the base;
+ *  an instruction byte of INSERT is followed by a length and that many
+ *  literal bytes.
+ *
+ *  Matches are found by indexing the base in blocks of BLOCK bytes and
+ *  extending every block match as far as it goes in both directions.
+ *
+ *  @author enmanuel hernandez
+ */
+class Delta {
+
+    /** Instruction copying a range of the base. */
+    static final int COPY = 0;
+    /** Instruction inserting literal bytes. */
+    static final int INSERT = 1;
+    /** The granularity at which matches in the base are indexed. */
+    static final int BLOCK = 16;
+
+    /** Returns a delta that produces TARGET from BASE. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        int literalStart = 0;
+        int p = 0;
+        while (p + BLOCK <= target.length) {
+            Integer candidate = blocks.get(hash(target, p));
+            if (candidate == null || !matches(base, candidate, target, p, BLOCK)) {
+                p += 1;
+                continue;
+            }
+            int start = candidate;
+            int end = candidate + BLOCK;
+            int targetStart = p;
+            int targetEnd = p + BLOCK;
+            while (start > 0 && targetStart > literalStart
+                   && base[start - 1] == target[targetStart - 1]) {
+                start -= 1;
+                targetStart -= 1;
+            }
+            while (end < base.length && targetEnd < target.length
+                   && base[end] == target[targetEnd]) {
+                end += 1;
+                targetEnd += 1;
+            }
+            writeInsert(out, target, literalStart, targetStart);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, end - start);
+            literalStart = p = targetEnd;
+        }
+        writeInsert(out, target, literalStart, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the target produced by applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        int baseLength = readVarint(delta, pos);
+        if (baseLength != base.length) {
+            throw Utils.error("Delta does not apply to its base.");
+        }
+        byte[] target = new byte[readVarint(delta, pos)];
+        int t = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++];
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, offset, target, t, length);
+                t += length;
+            } else {
+                int length = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], target, t, length);
+                pos[0] += length;
+                t += length;
+            }
+        }
+        if (t != target.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return target;
+    }
+
+    /** Write an INSERT of TARGET[FROM..TO) to OUT, if the range is not empty. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Returns true iff the LENGTH bytes of A at I equal those of B at J. */
+    private static boolean matches(byte[] a, int i, byte[] b, int j, int length) {
+        for (int k = 0; k < length; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns a hash of the BLOCK bytes of DATA starting at OFFSET. */
+    private static int hash(byte[] data, int offset) {
+        int h = 1;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = 31 * h + data[offset + k];
+        }
+        return h;
+    }
+
+    /** Write the non-negative VALUE to OUT, seven bits per byte, low bits first. */
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Returns the variable-length integer in DATA at POS[0], advancing POS[0]. */
+    static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = data[pos[0]++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.AnnotationElement;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventFactory;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+import jdk.jfr.ValueDescriptor;
+
+/** The JDK Flight Recorder events of a repository, all in the "Gitlet"
+ *  category, so a recording shows where a command spent its time.
+ *
+ *  Each operation of a {@link Repository} is a COMMAND, spanning the time
+ *  it waited for and held the repository's lock; a wait of a millisecond
+ *  or more is also a LOCK_WAIT. Inside it, every object read or written,
+ *  every hash computed, every scan of the working directory and every
+ *  update of a ref is an event of its own. Run Gitlet with
+ *  -XX:StartFlightRecording to record them.
+ *
+ *  The event types are made by an EventFactory the first time one is
+ *  needed while JFR is running, rather than declared as subclasses of
+ *  Event, which JFR would give global state. While JFR is not running,
+ *  begin returns null at once, and Gitlet does not even start JFR.
+ *
+ *  The same points of a repository's work also feed its {@link Trace},
+ *  held here so that everything recording that work has both at hand.
+ *
+ *  @author enmanuel hernandez
+ */
+final class Events {
+
+    /** The kinds of event. */
+    static final int COMMAND = 0, LOCK_WAIT = 1, OBJECT_READ = 2, OBJECT_WRITE = 3, HASH = 4,
+        SCAN = 5, REF_UPDATE = 6;
+
+    /** The trace of the repository's work, which may not be enabled. */
+    final Trace trace;
+    /** The factory of each kind of event, or null until first needed. */
+    private volatile EventFactory[] factories;
+
+    /** The events of a repository whose work is also recorded in TRACE. */
+    Events(Trace trace) {
+        this.trace = trace;
+    }
+
+    /** Returns a new event of the given KIND, begun, or null if JFR is not
+     *  running. Pass it to commit once the work it spans is done. */
+    Event begin(int kind) {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        Event event = factories()[kind].newEvent();
+        event.begin();
+        return event;
+    }
+
+    /** End EVENT and, if it is to be recorded, record it with VALUES as
+     *  its fields, in the order its kind declares them. */
+    static void commit(Event event, Object... values) {
+        event.end();
+        if (event.shouldCommit()) {
+            for (int i = 0; i < values.length; i += 1) {
+                event.set(i, values[i]);
+            }
+            event.commit();
+        }
+    }
+
+    /** Returns the factories of all kinds of event, making them if need be. */
+    private EventFactory[] factories() {
+        EventFactory[] result = factories;
+        if (result == null) {
+            synchronized (this) {
+                result = factories;
+                if (result == null) {
+                    result = new EventFactory[] {
+                        factory("Command", "An operation of a repository, including waiting"
+                                + " for its lock", true, null,
+                                field(String.class, "operation", "Operation")),
+                        factory("LockWait", "Waiting for another thread to release the lock"
+                                + " of a repository", true, "1 ms",
+                                field(String.class, "operation", "Operation"),
+                                field(boolean.class, "exclusive", "Exclusive")),
+                        factory("ObjectRead", "The reading and decoding of an object", false,
+                                null,
+                                field(String.class, "id", "ID"),
+                                field(String.class, "type", "Type"),
+                                bytes("bytes", "Size"),
+                                field(boolean.class, "packed", "Packed")),
+                        factory("ObjectWrite", "The storing of an object, hashing and"
+                                + " compressing it", false, null,
+                                field(String.class, "id", "ID"),
+                                field(String.class, "type", "Type"),
+                                bytes("bytes", "Size"),
+                                new ValueDescriptor(long.class, "hashTime", List.of(
+                                    new AnnotationElement(Label.class, "Hash Time"),
+                                    new AnnotationElement(Timespan.class, Timespan.NANOSECONDS))),
+                                field(boolean.class, "stored", "Stored")),
+                        factory("Hash", "The hashing of contents held in memory, or of a file"
+                                + " to compare it with the index", false, null,
+                                bytes("bytes", "Size")),
+                        factory("Scan", "A scan of the working directory", true, null,
+                                field(String.class, "directory", "Directory"),
+                                field(int.class, "files", "Files")),
+                        factory("RefUpdate", "The moving of the head or a branch to another"
+                                + " commit", true, null,
+                                field(String.class, "ref", "Ref"),
+                                field(String.class, "commit", "Commit")),
+                    };
+                    factories = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the factory of the events named "gitlet.NAME", described by
+     *  DESCRIPTION, with FIELDS, recording stack traces iff STACKTRACE, and
+     *  recording only events lasting THRESHOLD if that is not null. */
+    private static EventFactory factory(String name, String description, boolean stackTrace,
+                                        String threshold, ValueDescriptor... fields) {
+        List<AnnotationElement> annotations = new ArrayList<>();
+        annotations.add(new AnnotationElement(Name.class, "gitlet." + name));
+        annotations.add(new AnnotationElement(Label.class,
+                                              name.replaceAll("([a-z])([A-Z])", "$1 $2")));
+        annotations.add(new AnnotationElement(Category.class, new String[] {"Gitlet"}));
+        annotations.add(new AnnotationElement(Description.class, description));
+        annotations.add(new AnnotationElement(StackTrace.class, stackTrace));
+        if (threshold != null) {
+            annotations.add(new AnnotationElement(Threshold.class, threshold));
+        }
+        return EventFactory.create(annotations, List.of(fields));
+    }
+
+    /** Returns the field NAME of type TYPE, labelled LABEL. */
+    private static ValueDescriptor field(Class<?> type, String name, String label) {
+        return new ValueDescriptor(type, name, List.of(new AnnotationElement(Label.class, label)));
+    }
+
+    /** Returns the field NAME, labelled LABEL, holding a number of bytes. */
+    private static ValueDescriptor bytes(String name, String label) {
+        return new ValueDescriptor(long.class, name, List.of(
+            new AnnotationElement(Label.class, label),
+            new AnnotationElement(DataAmount.class, DataAmount.BYTES)));
+    }
+}
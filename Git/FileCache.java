@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/** Values read from files, each kept for as long as its file is unchanged.
+ *
+ *  Before a cached value is used, its file is stat'ed again, and the value
+ *  is read afresh if the file's stat data differs from when it was read,
+ *  so changes made by other processes are always seen. As with the index,
+ *  a file changed within the same clock tick as it was read could keep its
+ *  stat data, so values read from files modified less than SLACK before
+ *  are not trusted on their next use. A missing file is cached as such.
+ *
+ *  @author enmanuel hernandez
+ */
+class FileCache {
+
+    /** How long after being modified a file's stat data is trusted to show
+     *  any further change, in nanoseconds. This covers file systems that
+     *  keep whole seconds only. */
+    static final long SLACK = 2_000_000_000L;
+
+    /** A value read from a file. */
+    private static class Cached {
+        /** The file's stat data when read, or null if it did not exist. */
+        final Index.Stat stat;
+        /** True iff STAT is old enough to show any later change. */
+        final boolean trusted;
+        /** The value read. */
+        final Object value;
+
+        Cached(Index.Stat stat, boolean trusted, Object value) {
+            this.stat = stat;
+            this.trusted = trusted;
+            this.value = value;
+        }
+    }
+
+    /** The values read, by file. */
+    private final Map<File, Cached> values = new HashMap<>();
+    /** The trace counting the files stat'ed and read. */
+    private final Trace trace;
+
+    /** An empty cache, counting its hits and misses in TRACE. */
+    FileCache(Trace trace) {
+        this.trace = trace;
+    }
+
+    /** Returns the value LOAD reads from FILE, reusing the one it last read
+     *  if FILE has not changed since. */
+    @SuppressWarnings("unchecked")
+    synchronized <T> T get(File file, Function<File, T> load) {
+        Index.Stat stat = file.exists() ? Index.Stat.of(file.toPath()) : null;
+        trace.count("files stat'ed: repository state");
+        Cached cached = values.get(file);
+        if (cached != null && cached.trusted && Objects.equals(cached.stat, stat)) {
+            trace.count("file cache: hits");
+            return (T) cached.value;
+        }
+        trace.count("file cache: misses");
+        long now = System.currentTimeMillis() * 1_000_000L;
+        T value = load.apply(file);
+        values.put(file, new Cached(stat, stat == null || stat.mtime < now - SLACK, value));
+        return value;
+    }
+
+    /** Forget all values. */
+    synchronized void clear() {
+        values.clear();
+    }
+}
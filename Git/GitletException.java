@@ -2,8 +2,9 @@ package gitlet;
 
 /** General exception indicating a Gitlet error. 
  */
-class GitletException extends RuntimeException {
+public class GitletException extends RuntimeException {
 
+    private static final long serialVersionUID = 1L;
 
     /** A GitletException with no message. */
     GitletException() {
@@ -0,0 +1,361 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/** The rules of the .gitletignore files in a working directory, which
+ *  name the untracked files that status and add should leave alone.
+ *
+ *  The syntax is that of .gitignore. Blank lines and lines starting with
+ *  '#' are skipped, '!' negates a pattern, a trailing '/' matches only
+ *  directories, and a backslash quotes the next character. A pattern with
+ *  no other '/' matches the name of a file at any depth; one with a '/'
+ *  is anchored to the directory holding the .gitletignore, where '*', '?'
+ *  and [...] match within one path segment and "**" across segments. The
+ *  last matching rule decides; rules from a deeper .gitletignore take
+ *  precedence over those from its ancestors. An ignored directory is
+ *  never entered, so nothing inside it can be re-included.
+ *
+ *  Patterns are compiled when read. Most are a literal name, a literal
+ *  prefix followed by '*' or '*' followed by a literal suffix, such as
+ *  "*.class", and are matched by a single string comparison. The others
+ *  become a nondeterministic automaton that is run over the path once,
+ *  keeping the set of live states, so matching never backtracks.
+ *
+ *  @author enmanuel hernandez
+ */
+class Ignore {
+
+    /** The name of the files holding ignore rules. */
+    static final String FILE = ".gitletignore";
+
+    /** Kinds of compiled pattern, matched by comparing a literal with the
+     *  whole subject, its start or its end, or by running an automaton. */
+    static final int LITERAL = 0, PREFIX = 1, SUFFIX = 2, GLOB = 3;
+
+    /** Kinds of automaton state. CHAR, ANY and CLASS consume one character
+     *  other than '/' that matches. STAR consumes any characters other
+     *  than '/' and DEEP any characters at all, both also passing straight
+     *  on to the next state. SKIP consumes nothing and passes on to either
+     *  of the next two states. DIRS consumes any characters and passes on
+     *  to the next state after each '/'. "**" followed by '/' compiles to
+     *  SKIP then DIRS, matching any number of whole directories. */
+    static final int CHAR = 0, ANY = 1, CLASS = 2, STAR = 3, DEEP = 4, SKIP = 5, DIRS = 6;
+
+    /** One compiled pattern. */
+    private static class Rule {
+        /** True iff a match means the path is not ignored after all. */
+        final boolean negated;
+        /** True iff only directories match. */
+        final boolean directoryOnly;
+        /** True iff the pattern matches the path below the base directory,
+         *  and not just the last segment. */
+        final boolean anchored;
+        /** The kind of pattern: LITERAL, PREFIX, SUFFIX or GLOB. */
+        final int kind;
+        /** The literal text matched, unless this is a GLOB. */
+        final String literal;
+        /** The kind of each automaton state of a GLOB, the state after the
+         *  last one accepting. */
+        final int[] states;
+        /** The character consumed by each CHAR state, and for each CLASS
+         *  state the pairs of bounds of its ranges. */
+        final String[] operands;
+        /** For each CLASS state, true iff it matches characters outside
+         *  its ranges. */
+        final boolean[] complement;
+
+        Rule(boolean negated, boolean directoryOnly, boolean anchored, List<Integer> kinds,
+             List<String> texts, List<Boolean> complements) {
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.anchored = anchored;
+
+            int stars = 0, first = -1;
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < kinds.size(); i += 1) {
+                if (kinds.get(i) == CHAR) {
+                    text.append(texts.get(i));
+                } else if (kinds.get(i) == STAR) {
+                    stars += 1;
+                    first = i;
+                } else {
+                    stars = 2;
+                }
+            }
+            if (stars == 0) {
+                kind = LITERAL;
+            } else if (stars == 1 && first == 0) {
+                kind = SUFFIX;
+            } else if (stars == 1 && first == kinds.size() - 1) {
+                kind = PREFIX;
+            } else {
+                kind = GLOB;
+            }
+            literal = text.toString();
+
+            states = new int[kinds.size()];
+            operands = texts.toArray(new String[0]);
+            complement = new boolean[kinds.size()];
+            for (int i = 0; i < states.length; i += 1) {
+                states[i] = kinds.get(i);
+                complement[i] = complements.get(i);
+            }
+        }
+
+        /** Returns true iff this rule matches PATH, relative to the
+         *  directory holding the rule, which is a directory iff
+         *  ISDIRECTORY. */
+        boolean matches(String path, boolean isDirectory) {
+            if (directoryOnly && !isDirectory) {
+                return false;
+            }
+            String subject = anchored ? path : path.substring(path.lastIndexOf('/') + 1);
+            int split = subject.length() - literal.length();
+            switch (kind) {
+            case LITERAL:
+                return subject.equals(literal);
+            case PREFIX:
+                return subject.startsWith(literal) && subject.indexOf('/', literal.length()) < 0;
+            case SUFFIX:
+                return split >= 0 && subject.endsWith(literal)
+                    && subject.lastIndexOf('/', split - 1) < 0;
+            default:
+                return run(subject);
+            }
+        }
+
+        /** Returns true iff the automaton accepts all of SUBJECT. */
+        private boolean run(String subject) {
+            BitSet live = new BitSet(states.length + 1);
+            BitSet next = new BitSet(states.length + 1);
+            live.set(0);
+            close(live);
+            for (int k = 0; k < subject.length() && !live.isEmpty(); k += 1) {
+                char c = subject.charAt(k);
+                next.clear();
+                for (int i = live.nextSetBit(0); i >= 0 && i < states.length;
+                     i = live.nextSetBit(i + 1)) {
+                    switch (states[i]) {
+                    case CHAR:
+                        if (c == operands[i].charAt(0)) {
+                            next.set(i + 1);
+                        }
+                        break;
+                    case ANY:
+                        if (c != '/') {
+                            next.set(i + 1);
+                        }
+                        break;
+                    case CLASS:
+                        if (c != '/' && inClass(i, c)) {
+                            next.set(i + 1);
+                        }
+                        break;
+                    case STAR:
+                        if (c != '/') {
+                            next.set(i);
+                        }
+                        break;
+                    case DEEP:
+                        next.set(i);
+                        break;
+                    case DIRS:
+                        next.set(i);
+                        if (c == '/') {
+                            next.set(i + 1);
+                        }
+                        break;
+                    default:
+                        break;
+                    }
+                }
+                close(next);
+                BitSet swap = live;
+                live = next;
+                next = swap;
+            }
+            return live.get(states.length);
+        }
+
+        /** Add to LIVE every state reached from it without consuming any
+         *  characters. Such moves only ever go forward, so one pass in
+         *  order suffices. */
+        private void close(BitSet live) {
+            for (int i = live.nextSetBit(0); i >= 0 && i < states.length;
+                 i = live.nextSetBit(i + 1)) {
+                if (states[i] == STAR || states[i] == DEEP) {
+                    live.set(i + 1);
+                } else if (states[i] == SKIP) {
+                    live.set(i + 1);
+                    live.set(i + 2);
+                }
+            }
+        }
+
+        /** Returns true iff the CLASS state I matches C. */
+        private boolean inClass(int i, char c) {
+            String ranges = operands[i];
+            for (int j = 0; j + 1 < ranges.length(); j += 2) {
+                if (ranges.charAt(j) <= c && c <= ranges.charAt(j + 1)) {
+                    return !complement[i];
+                }
+            }
+            return complement[i];
+        }
+    }
+
+    /** The rules of the enclosing directories, or null if there are none. */
+    private final Ignore parent;
+    /** The path of the directory holding these rules, relative to the top
+     *  of the working directory and ending in '/' unless empty. */
+    private final String base;
+    /** The rules, in the order given. */
+    private final List<Rule> rules = new ArrayList<>();
+
+    /** The rules in the lines of LINES, read from the directory BASE, taking
+     *  precedence over PARENT. */
+    Ignore(Ignore parent, String base, String lines) {
+        this.parent = parent;
+        this.base = base;
+        for (String line : lines.split("\r?\n")) {
+            Rule rule = compile(line);
+            if (rule != null) {
+                rules.add(rule);
+            }
+        }
+    }
+
+    /** Returns the rules in the .gitletignore of DIR, whose path relative
+     *  to the top is BASE, taking precedence over PARENT, or PARENT itself
+     *  if there is no such file. */
+    static Ignore read(Ignore parent, String base, File dir) {
+        File file = new File(dir, FILE);
+        if (!file.isFile()) {
+            return parent;
+        }
+        return new Ignore(parent, base, Utils.readContentsAsString(file));
+    }
+
+    /** Returns true iff the file or directory at PATH, relative to the top
+     *  of the working directory and inside the directory of these rules,
+     *  is ignored. It is a directory iff ISDIRECTORY. */
+    boolean isIgnored(String path, boolean isDirectory) {
+        String relative = path.substring(base.length());
+        for (int i = rules.size() - 1; i >= 0; i -= 1) {
+            Rule rule = rules.get(i);
+            if (rule.matches(relative, isDirectory)) {
+                return !rule.negated;
+            }
+        }
+        return parent != null && parent.isIgnored(path, isDirectory);
+    }
+
+    /** Returns the rule given by LINE, or null if it holds none. */
+    private static Rule compile(String line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ' '
+               && (end < 2 || line.charAt(end - 2) != '\\')) {
+            end -= 1;
+        }
+        String pattern = line.substring(0, end);
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return null;
+        }
+        boolean negated = pattern.startsWith("!");
+        if (negated) {
+            pattern = pattern.substring(1);
+        }
+        boolean directoryOnly = pattern.endsWith("/") && !pattern.endsWith("\\/");
+        if (directoryOnly) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        boolean anchored = pattern.indexOf('/') >= 0;
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        } else if (pattern.startsWith("**/") && pattern.indexOf('/', 3) < 0) {
+            // Matching at any depth is what an unanchored pattern does
+            pattern = pattern.substring(3);
+            anchored = false;
+        }
+        if (pattern.isEmpty()) {
+            return null;
+        }
+
+        List<Integer> kinds = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        List<Boolean> complements = new ArrayList<>();
+        int n = pattern.length();
+        for (int i = 0; i < n; i += 1) {
+            char c = pattern.charAt(i);
+            boolean complement = false;
+            String text = "";
+            int kind;
+            if (c == '\\' && i + 1 < n) {
+                i += 1;
+                kind = CHAR;
+                text = String.valueOf(pattern.charAt(i));
+            } else if (c == '?') {
+                kind = ANY;
+            } else if (c == '*' && i + 1 < n && pattern.charAt(i + 1) == '*'
+                       && (i == 0 || pattern.charAt(i - 1) == '/')
+                       && (i + 2 == n || pattern.charAt(i + 2) == '/')) {
+                if (i + 2 == n) {
+                    kind = DEEP;
+                    i += 1;
+                } else {
+                    kinds.add(SKIP);
+                    texts.add("");
+                    complements.add(false);
+                    kind = DIRS;
+                    i += 2;
+                }
+            } else if (c == '*') {
+                kind = STAR;
+                while (i + 1 < n && pattern.charAt(i + 1) == '*') {
+                    i += 1;
+                }
+            } else if (c == '[' && classEnd(pattern, i) > 0) {
+                int close = classEnd(pattern, i);
+                int j = i + 1;
+                if (pattern.charAt(j) == '!' || pattern.charAt(j) == '^') {
+                    complement = true;
+                    j += 1;
+                }
+                StringBuilder ranges = new StringBuilder();
+                for (; j < close; j += 1) {
+                    char low = pattern.charAt(j);
+                    char high = low;
+                    if (j + 2 < close && pattern.charAt(j + 1) == '-') {
+                        high = pattern.charAt(j + 2);
+                        j += 2;
+                    }
+                    ranges.append(low).append(high);
+                }
+                kind = CLASS;
+                text = ranges.toString();
+                i = close;
+            } else {
+                kind = CHAR;
+                text = String.valueOf(c);
+            }
+            kinds.add(kind);
+            texts.add(text);
+            complements.add(complement);
+        }
+        return new Rule(negated, directoryOnly, anchored, kinds, texts, complements);
+    }
+
+    /** Returns the index of the ']' closing the character class opened at
+     *  START in PATTERN, or -1 if it is not closed. A ']' right after the
+     *  opening bracket or its negation is taken literally. */
+    private static int classEnd(String pattern, int start) {
+        int i = start + 1;
+        if (i < pattern.length() && (pattern.charAt(i) == '!' || pattern.charAt(i) == '^')) {
+            i += 1;
+        }
+        return pattern.indexOf(']', i + 1);
+    }
+}
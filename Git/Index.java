@@ -0,0 +1,448 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** The staging area: one entry for every file the next commit will hold.
+ *
+ *  Each entry records the blob ID the file was added with, together with
+ *  the file's stat data at that moment: its mode, size, modification and
+ *  change times and inode. A file whose stat data still matches its
+ *  entry is taken to be unchanged without being opened. Files staged for
+ *  addition are those whose entry differs from the head commit, and files
+ *  staged for removal are those in the head commit with no entry.
+ *
+ *  The index also remembers the tree it was last compared with, normally
+ *  that of the head commit, and the paths at which its entries differ
+ *  from it, with the blob IDs the tree has there. As long as the head
+ *  commit keeps that tree, the files staged and removed are just these
+ *  paths, and status and commit need not read a single tree. Every change
+ *  to an entry keeps them up to date, since the tree's blob at a path not
+ *  among them is that of the path's entry.
+ *
+ *  The index is kept in .gitlet/index, sorted by path: the int MAGIC, the
+ *  format VERSION and the number of entries, then each entry as its
+ *  length-prefixed UTF-8 path, its stat data, its raw blob ID and its
+ *  flags, then the tree compared with, if any, and the differences from
+ *  it, and finally the SHA-1 of everything before it. Indexes of version
+ *  1, which end after the entries, are still read. It is replaced as a
+ *  whole by writing a new file and renaming it into place.
+ *
+ *  A file modified within the same clock tick as the index was written
+ *  could keep its stat data, so entries whose modification time is not
+ *  older than the index itself are never trusted to be clean, as in Git.
+ *
+ *  @author enmanuel hernandez
+ */
+class Index {
+
+    /** The first four bytes of every index: "DIRC". */
+    static final int MAGIC = 0x44495243;
+    /** The version of the index format. */
+    static final int VERSION = 2;
+
+    /** The bits of a Unix mode giving the file type. */
+    static final int TYPE_MASK = 0170000;
+    /** The file type bits of a regular file. */
+    static final int REGULAR = 0100000;
+    /** The file type bits of a directory. */
+    static final int DIRECTORY = 0040000;
+
+    /** The stat data of a file, as compared to detect changes. */
+    static class Stat {
+        /** The file's Unix mode, or only its file type bits where there is
+         *  none. */
+        final int mode;
+        /** The file's length in bytes. */
+        final long size;
+        /** The file's modification time, in nanoseconds since the epoch. */
+        final long mtime;
+        /** The file's status change time, in nanoseconds since the epoch,
+         *  or its creation time where there is none. */
+        final long ctime;
+        /** The file's inode number, or 0 where there is none. */
+        final long inode;
+
+        Stat(int mode, long size, long mtime, long ctime, long inode) {
+            this.mode = mode;
+            this.size = size;
+            this.mtime = mtime;
+            this.ctime = ctime;
+            this.inode = inode;
+        }
+
+        /** Returns the stat data of FILE, which must exist, without
+         *  following symbolic links. FILE may be a directory. */
+        static Stat of(Path file) {
+            try {
+                Map<String, Object> unix = Files.readAttributes(
+                    file, "unix:mode,size,lastModifiedTime,ctime,ino", LinkOption.NOFOLLOW_LINKS);
+                return new Stat((Integer) unix.get("mode"), (Long) unix.get("size"),
+                                nanos(unix.get("lastModifiedTime")), nanos(unix.get("ctime")),
+                                (Long) unix.get("ino"));
+            } catch (UnsupportedOperationException excp) {
+                try {
+                    BasicFileAttributes basic = Files.readAttributes(
+                        file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    int type = basic.isDirectory() ? DIRECTORY : basic.isRegularFile() ? REGULAR : 0;
+                    return new Stat(type, basic.size(), nanos(basic.lastModifiedTime()),
+                                    nanos(basic.creationTime()), 0);
+                } catch (IOException excp2) {
+                    throw new IllegalArgumentException(excp2);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+
+        /** Returns true iff this is the stat data of a regular file. */
+        boolean isFile() {
+            return (mode & TYPE_MASK) == REGULAR;
+        }
+
+        /** Returns true iff this is the stat data of a directory. */
+        boolean isDirectory() {
+            return (mode & TYPE_MASK) == DIRECTORY;
+        }
+
+        /** Returns the file time TIME in nanoseconds since the epoch. */
+        private static long nanos(Object time) {
+            return ((FileTime) time).to(TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Stat)) {
+                return false;
+            }
+            Stat other = (Stat) obj;
+            return mode == other.mode && size == other.size && mtime == other.mtime
+                && ctime == other.ctime && inode == other.inode;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(mtime ^ size ^ inode);
+        }
+    }
+
+    /** The entry of one staged file. */
+    static class Entry {
+        /** The file's path relative to the working directory. */
+        final String path;
+        /** The file's stat data when it was added. */
+        final Stat stat;
+        /** The ID of the blob holding the file's staged contents. */
+        final String id;
+        /** Flags of the entry; none are defined yet, so always 0. */
+        final int flags;
+
+        Entry(String path, Stat stat, String id, int flags) {
+            this.path = path;
+            this.stat = stat;
+            this.id = id;
+            this.flags = flags;
+        }
+
+        Entry(String path, Stat stat, String id) {
+            this(path, stat, id, 0);
+        }
+    }
+
+    /** The entries, by path. */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    /** The ID of the tree the entries were last compared with, or null if
+     *  there is none. */
+    private String tree;
+    /** If TREE is not null, the paths at which the entries differ from it,
+     *  each mapped to the blob ID TREE has there, or to null if none. */
+    private final TreeMap<String, String> differences = new TreeMap<>();
+    /** The number of changes made to the entries since this index was made. */
+    private long changes;
+    /** The modification time of the index file when it was read, or the
+     *  time it was last stamped, in nanoseconds since the epoch, or
+     *  Long.MIN_VALUE if there was neither. */
+    private long timestamp;
+
+    /** An empty index. */
+    Index() {
+        this(Long.MIN_VALUE);
+    }
+
+    /** An empty index, as if read when its file had the given TIMESTAMP. */
+    private Index(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /** Returns the index stored in FILE, or an empty one if FILE does not
+     *  exist. */
+    static Index read(File file) {
+        if (!file.isFile()) {
+            return new Index();
+        }
+        Index index = new Index(Stat.of(file.toPath()).mtime);
+        byte[] bytes = Utils.readContents(file);
+        int end = bytes.length - Commit.RAW_ID_LENGTH;
+        if (end < 3 * Integer.BYTES
+            || !Arrays.equals(sha1(bytes, end), Arrays.copyOfRange(bytes, end, bytes.length))) {
+            throw Utils.error("Corrupt index.");
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, end));
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != 1 && version != VERSION) {
+                throw Utils.error("Unsupported index format.");
+            }
+            int count = in.readInt();
+            byte[] raw = new byte[Commit.RAW_ID_LENGTH];
+            for (int i = 0; i < count; i += 1) {
+                byte[] path = new byte[in.readInt()];
+                in.readFully(path);
+                Stat stat = new Stat(in.readInt(), in.readLong(), in.readLong(),
+                                     in.readLong(), in.readLong());
+                in.readFully(raw);
+                Entry e = new Entry(new String(path, StandardCharsets.UTF_8), stat,
+                                    Utils.bytesToHex(raw), in.readInt());
+                index.entries.put(e.path, e);
+            }
+            if (version > 1 && in.readBoolean()) {
+                in.readFully(raw);
+                index.tree = Utils.bytesToHex(raw);
+                int differences = in.readInt();
+                for (int i = 0; i < differences; i += 1) {
+                    byte[] path = new byte[in.readInt()];
+                    in.readFully(path);
+                    String id = null;
+                    if (in.readBoolean()) {
+                        in.readFully(raw);
+                        id = Utils.bytesToHex(raw);
+                    }
+                    index.differences.put(new String(path, StandardCharsets.UTF_8), id);
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt index.");
+        }
+        return index;
+    }
+
+    /** Write this index to FILE, replacing its previous contents at once. */
+    void write(File file) {
+        File tmp = new File(file.getPath() + ".lock");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)), digest))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Entry e : entries.values()) {
+                    byte[] path = e.path.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(path.length);
+                    out.write(path);
+                    out.writeInt(e.stat.mode);
+                    out.writeLong(e.stat.size);
+                    out.writeLong(e.stat.mtime);
+                    out.writeLong(e.stat.ctime);
+                    out.writeLong(e.stat.inode);
+                    out.write(Utils.hexToBytes(e.id));
+                    out.writeInt(e.flags);
+                }
+                out.writeBoolean(tree != null);
+                if (tree != null) {
+                    out.write(Utils.hexToBytes(tree));
+                    out.writeInt(differences.size());
+                    for (Map.Entry<String, String> d : differences.entrySet()) {
+                        byte[] path = d.getKey().getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(path.length);
+                        out.write(path);
+                        out.writeBoolean(d.getValue() != null);
+                        if (d.getValue() != null) {
+                            out.write(Utils.hexToBytes(d.getValue()));
+                        }
+                    }
+                }
+                out.flush();
+                out.write(digest.digest());
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the SHA-1 of the first LENGTH bytes of BYTES. */
+    private static byte[] sha1(byte[] bytes, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(bytes, 0, length);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the entry for PATH, or null if there is none. */
+    Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /** Add ENTRY, replacing any entry for the same path. Since a path
+     *  cannot be both a file and a directory, the entries for the
+     *  directories above ENTRY and for the files below it are removed. */
+    void put(Entry entry) {
+        String path = entry.path;
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+            if (entries.containsKey(path.substring(0, slash))) {
+                remove(path.substring(0, slash));
+            }
+        }
+        String below = path + "/";
+        for (String next = entries.ceilingKey(below); next != null && next.startsWith(below);
+             next = entries.ceilingKey(below)) {
+            remove(next);
+        }
+        changed(path, entries.put(path, entry), entry);
+    }
+
+    /** Remove and return the entry for PATH, or return null if there is none. */
+    Entry remove(String path) {
+        Entry old = entries.remove(path);
+        changed(path, old, null);
+        return old;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        entries.clear();
+        tree = null;
+        differences.clear();
+        changes += 1;
+    }
+
+    /** Update the differences from the tree compared with for the entry at
+     *  PATH having changed from OLD to NOW, either of which may be null. */
+    private void changed(String path, Entry old, Entry now) {
+        changes += 1;
+        if (tree == null) {
+            return;
+        }
+        String inTree = differences.containsKey(path) ? differences.get(path)
+            : old == null ? null : old.id;
+        if (Objects.equals(inTree, now == null ? null : now.id)) {
+            differences.remove(path);
+        } else {
+            differences.put(path, inTree);
+        }
+    }
+
+    /** Returns the number of changes made to the entries since this index
+     *  was made, so that a caller can tell whether it changed meanwhile. */
+    long changes() {
+        return changes;
+    }
+
+    /** Returns the ID of the tree the entries were last compared with, or
+     *  null if there is none. */
+    String tree() {
+        return tree;
+    }
+
+    /** Record that the entries were compared with the tree TREEID, and
+     *  differ from it at the paths of DIFFERENCES, each mapped to the blob
+     *  ID TREEID has there, or to null if none. */
+    void compared(String treeID, Map<String, String> differences) {
+        this.tree = treeID;
+        this.differences.clear();
+        this.differences.putAll(differences);
+    }
+
+    /** Record that the entries are exactly the files of the tree TREEID. */
+    void compared(String treeID) {
+        compared(treeID, Map.of());
+    }
+
+    /** Returns the paths at which the entries differ from the tree they
+     *  were compared with, each mapped to the blob ID the tree has there,
+     *  or to null if none. */
+    SortedMap<String, String> differences() {
+        return Collections.unmodifiableSortedMap(differences);
+    }
+
+    /** Returns the files of the tree the entries were compared with, which
+     *  must exist, as their paths and blob IDs, sorted by path. */
+    List<Map.Entry<String, String>> treeFiles() {
+        List<Map.Entry<String, String>> files = new ArrayList<>(entries.size());
+        Iterator<Map.Entry<String, String>> diffs = differences.entrySet().iterator();
+        Map.Entry<String, String> diff = diffs.hasNext() ? diffs.next() : null;
+        for (Entry e : entries.values()) {
+            while (diff != null && diff.getKey().compareTo(e.path) <= 0) {
+                if (diff.getValue() != null) {
+                    files.add(diff);
+                }
+                boolean same = diff.getKey().equals(e.path);
+                diff = diffs.hasNext() ? diffs.next() : null;
+                if (same) {
+                    e = null;
+                    break;
+                }
+            }
+            if (e != null) {
+                files.add(Map.entry(e.path, e.id));
+            }
+        }
+        for (; diff != null; diff = diffs.hasNext() ? diffs.next() : null) {
+            if (diff.getValue() != null) {
+                files.add(diff);
+            }
+        }
+        return files;
+    }
+
+    /** Returns all entries, sorted by path. */
+    Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /** Take the stat data of the entries to be as current as if this index
+     *  had been written at TIMESTAMP, for an index kept in memory instead
+     *  of being written. */
+    void stamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /** Returns true iff a file whose stat data is STAT can be taken to
+     *  still hold the contents ENTRY was added with, without reading it. */
+    boolean isClean(Entry entry, Stat stat) {
+        return entry.stat.equals(stat) && entry.stat.mtime < timestamp;
+    }
+}
@@ -1,5 +1,8 @@
 package gitlet;
 
+import java.util.Arrays;
+import java.util.Map;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author enmanuel hernandez
  */
@@ -10,111 +13,200 @@ public class Main {
      *
      *  The main method takes in command-line arguments and calls the appropriate
      *  methods in the Repository class based on the provided command and operands.
+     *  Errors are reported on the standard output, after which the program exits.
+     *  With "--batch", commands are read from the standard input instead; see
+     *  {@link Batch}. With a leading "--trace", or with GITLET_TRACE=perf in
+     *  the environment, a {@link Trace} of the work done is printed on the
+     *  standard error at exit. GITLET_CACHE_BYTES, if set, is the budget of
+     *  the repository's {@link ObjectCache}.
      */
     public static void main(String[] args) {
+        boolean tracing = args.length > 0 && args[0].equals("--trace");
+        if (tracing) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        Trace trace = new Trace(tracing || "perf".equals(System.getenv("GITLET_TRACE")));
+        try {
+            Repository repository = new Repository(Repository.CWD, trace, cacheBudget());
+            if (args.length > 0 && args[0].equals("--batch")) {
+                if (args.length > 2 || args.length == 2 && !args[1].equals("-z")) {
+                    throw Utils.error("Incorrect operands.");
+                }
+                new Batch(repository, args.length == 2).run(System.in);
+            } else {
+                run(repository, args);
+            }
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            trace.report(System.err);
+            System.exit(0);
+        }
+        trace.report(System.err);
+    }
+
+    /** Returns the budget of the object cache given by GITLET_CACHE_BYTES,
+     *  or the default if it is not set. */
+    private static long cacheBudget() {
+        String budget = System.getenv("GITLET_CACHE_BYTES");
+        if (budget == null) {
+            return ObjectCache.DEFAULT_BUDGET;
+        }
+        try {
+            return Long.parseLong(budget.trim());
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Bad GITLET_CACHE_BYTES: %s", budget);
+        }
+    }
+
+    /** Run the command in ARGS against REPOSITORY, printing its output on the
+     *  standard output and throwing a GitletException on errors. The daemon
+     *  command serves commands sent by {@link Client} until stopped. */
+    static void run(Repository repository, String[] args) {
         // Check if there are no arguments
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw Utils.error("Please enter a command.");
         }
 
         // Extract the first argument
         String firstArg = args[0];
 
         // Check if the current working directory is an initialized Git directory
-        if (!Repository.gitlet(args[0])) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+        if (!repository.gitlet(args[0])) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
         }
 
         // Process the command and dispatch to the corresponding method in Repository
         switch (firstArg) {
             case "init":
-                if (Repository.checkIfGitletExists()) {
-                    System.out.println("A Gitlet version-control system already exists in the current directory.");
-                    System.exit(0);
-                }
-                Repository.Persistence();
                 checkOperands(args, 1);
-                Repository.Init();
+                repository.init();
                 break;
             case "add":
-                checkOperands(args, 2);
-                Repository.stage(args[1]);
+                checkOperands(args, 2, Integer.MAX_VALUE);
+                repository.stage(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "commit":
                 if (args.length == 1 || args[1].equals("")) {
-                    System.out.println("Please enter a commit message.");
-                    System.exit(0);
+                    throw Utils.error("Please enter a commit message.");
                 }
                 checkOperands(args, 2);
-                Repository.commit(args[1]);
+                repository.commit(args[1]);
                 break;
             case "rm":
                 checkOperands(args, 2);
-                Repository.rm(args[1]);
+                repository.rm(args[1]);
                 break;
             case "log":
                 checkOperands(args, 1);
-                Repository.log();
+                repository.log().forEach(Main::printCommit);
                 break;
             case "global-log":
                 checkOperands(args, 1);
-                Repository.globalLog();
+                repository.globalLog(Main::printCommit);
                 break;
             case "find":
                 checkOperands(args, 2);
-                Repository.find(args[1]);
+                if (repository.find(args[1], System.out::println) == 0) {
+                    throw Utils.error("Found no commit with that message.");
+                }
                 break;
             case "status":
                 checkOperands(args, 1);
-                Repository.status();
+                printStatus(repository);
                 break;
             case "restore":
                 checkOperands(args, 3, 4);
                 if (args[1].compareTo("--") == 0) {
-                    Repository.restoreFile(args[2]);
+                    repository.restoreFile(args[2]);
                 } else if (args[2].compareTo("--") == 0) {
-                    Repository.restoreCommit(args[1], args[3]);
+                    repository.restoreCommit(args[1], args[3]);
                 } else {
-                    System.out.println("Incorrect operands.");
-                    System.exit(0);
+                    throw Utils.error("Incorrect operands.");
                 }
                 break;
             case "branch":
                 checkOperands(args, 2);
-                Repository.branch(args[1]);
+                repository.branch(args[1]);
                 break;
             case "switch":
                 checkOperands(args, 2);
-                Repository.switchBranch(args[1]);
+                repository.switchBranch(args[1]);
                 break;
             case "rm-branch":
                 checkOperands(args, 2);
-                Repository.rmBranch(args[1]);
+                repository.rmBranch(args[1]);
                 break;
             case "reset":
                 checkOperands(args, 2);
-                Repository.reset(args[1]);
+                repository.reset(args[1]);
+                break;
+            case "repack":
+                checkOperands(args, 1);
+                repository.repack();
+                break;
+            case "daemon":
+                checkOperands(args, 1);
+                new Daemon(repository).serve();
                 break;
             default:
-                System.out.println("No command with that name exists.");
-                System.exit(0);
+                throw Utils.error("No command with that name exists.");
         }
     }
 
+    /** Print the details of commit C. */
+    private static void printCommit(Commit c) {
+        System.out.println("===");
+        System.out.println("commit " + c.getHash());
+        System.out.println("Date: " + c.getTime());
+        System.out.println(c.getMessage() + "\n");
+    }
+
+    /** Print the branches of REPOSITORY, marking the current one, and its
+     *  status. */
+    private static void printStatus(Repository repository) {
+        System.out.println("=== Branches ===");
+        String currentBranchName = repository.currentBranch();
+        for (String branch : repository.branches()) {
+            System.out.println(branch.equals(currentBranchName) ? "*" + branch : branch);
+        }
+
+        Status status = repository.status();
+        System.out.print("\n");
+        System.out.println("=== Staged Files ===");
+        for (String file : status.staged()) {
+            System.out.println(file);
+        }
+
+        System.out.print("\n");
+        System.out.println("=== Removed Files ===");
+        for (String file : status.removed()) {
+            System.out.println(file);
+        }
+
+        System.out.print("\n");
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        for (Map.Entry<String, String> file : status.notStaged().entrySet()) {
+            System.out.println(file.getKey() + " (" + file.getValue() + ")");
+        }
+
+        System.out.print("\n");
+        System.out.println("=== Untracked Files ===");
+        for (String file : status.untracked()) {
+            System.out.println(file);
+        }
+        System.out.print("\n");
+    }
+
     //Helper method to check the number of operands in command-line arguments.
     private static void checkOperands(String[] args, int expectedNumOperands) {
         if (args.length != expectedNumOperands) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
     }
     //Helper method to check the number of operands within a range in command-line arguments.
     private static void checkOperands(String[] args, int minNumOperands, int maxNumOperands) {
         if (args.length < minNumOperands || args.length > maxNumOperands) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
     }
 }
\ No newline at end of file
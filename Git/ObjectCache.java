@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/** Decoded commits and trees, by object ID, kept up to a budget of bytes.
+ *
+ *  An object never changes once stored, so a decoded one stays valid for
+ *  as long as the repository exists, and a {@link Repository} keeps one
+ *  cache for all its commands: within a command, walking the same commits
+ *  and trees again costs nothing, and a repository kept open by the
+ *  {@link Daemon} shares them between commands. Each object is weighed by
+ *  an estimate of the heap it takes, and the least recently used ones are
+ *  dropped once their total weight exceeds the budget, so many small trees
+ *  and a few large ones cost the same memory.
+ *
+ *  Objects are decoded outside the cache's lock, so two threads may decode
+ *  the same object at once; either result will do.
+ *
+ *  @author enmanuel hernandez
+ */
+final class ObjectCache {
+
+    /** The default budget, in bytes. */
+    static final long DEFAULT_BUDGET = 32L << 20;
+
+    /** An object held by the cache, with its weight. */
+    private static class Cached {
+        /** The decoded object. */
+        final Object value;
+        /** The estimated bytes of heap it takes. */
+        final long weight;
+
+        Cached(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** The most bytes the objects held may weigh. */
+    private final long budget;
+    /** The trace counting hits, misses and evictions, as reported by
+     *  --trace. */
+    private final Trace trace;
+    /** The objects held, by ID, least recently used first. */
+    private final LinkedHashMap<String, Cached> objects = new LinkedHashMap<>(16, 0.75f, true);
+    /** The total weight of the objects held. */
+    private long weight;
+
+    /** An empty cache holding at most BUDGET bytes of objects, counting its
+     *  work in TRACE. */
+    ObjectCache(long budget, Trace trace) {
+        if (budget < 0) {
+            throw Utils.error("The object cache budget must not be negative.");
+        }
+        this.budget = budget;
+        this.trace = trace;
+    }
+
+    /** Returns the object with the given ID, held or else read by LOAD and
+     *  then held, weighed by WEIGHT, if it fits in the budget. */
+    @SuppressWarnings("unchecked")
+    <T> T get(String id, Function<String, T> load, ToLongFunction<T> weight) {
+        synchronized (this) {
+            Cached cached = objects.get(id);
+            if (cached != null) {
+                trace.count("object cache: hits");
+                return (T) cached.value;
+            }
+        }
+        trace.count("object cache: misses");
+        T value = load.apply(id);
+        long w = weight.applyAsLong(value);
+        if (w > budget) {
+            return value;
+        }
+        synchronized (this) {
+            Cached old = objects.put(id, new Cached(value, w));
+            this.weight += w - (old == null ? 0 : old.weight);
+            Iterator<Cached> eldest = objects.values().iterator();
+            while (this.weight > budget && eldest.hasNext()) {
+                this.weight -= eldest.next().weight;
+                eldest.remove();
+                trace.count("object cache: evictions");
+            }
+        }
+        return value;
+    }
+
+    /** Drop all objects. */
+    synchronized void clear() {
+        objects.clear();
+        weight = 0;
+    }
+}
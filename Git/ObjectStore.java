@@ -0,0 +1,613 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import jdk.jfr.Event;
+
+import static gitlet.Utils.*;
+
+/** Content-addressed storage for commits, trees and file contents.
+ *
+ *  Every object is written once to .gitlet/objects under the SHA-1 of its
+ *  type and contents, so commits and branches that share a version of a
+ *  file, or an unchanged directory, share a single copy of it on disk.
+ *
+ *  New objects are written loose, one file each, holding a Git-style
+ *  "<type> <length>" header, a zero byte and the contents, compressed with
+ *  zlib. Files are hashed and compressed in a single pass through a
+ *  fixed-size buffer, so storing one takes the same memory whatever its
+ *  size, and any number of threads may store objects at once. As in Git,
+ *  the loose object with ID "xxyyyy..." is kept as objects/xx/yyyy..., so
+ *  no directory holds more than a 256th of the store, and finding an
+ *  object, or the objects starting with a prefix of two or more digits,
+ *  reads at most one small directory.
+ *
+ *  The repack operation gathers all of them into a single {@link Pack}
+ *  under .gitlet/objects/pack, where similar objects are stored as
+ *  deltas, with an index for finding objects by full or abbreviated ID.
+ *
+ *  @author enmanuel hernandez
+ */
+class ObjectStore {
+
+    /** The object type under which file contents are stored. */
+    static final String BLOB = "blob";
+
+    /** The number of leading hex digits of an ID naming the subdirectory
+     *  its loose object is kept in. */
+    static final int SHARD_DIGITS = 2;
+    /** The size of the buffers through which objects are written and
+     *  copied out. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** An object read from the store: its type and contents. */
+    static class StoredObject {
+        /** The object's type. */
+        final String type;
+        /** The object's contents. */
+        final byte[] contents;
+
+        StoredObject(String type, byte[] contents) {
+            this.type = type;
+            this.contents = contents;
+        }
+    }
+
+    /** An object opened for reading: its type, its length and a stream of
+     *  its contents, to be closed once read. */
+    static class ObjectStream implements Closeable {
+        /** The object's type. */
+        final String type;
+        /** The length of its contents. */
+        final long length;
+        /** Its contents. */
+        final InputStream contents;
+
+        ObjectStream(String type, long length, InputStream contents) {
+            this.type = type;
+            this.length = length;
+            this.contents = contents;
+        }
+
+        @Override
+        public void close() throws IOException {
+            contents.close();
+        }
+    }
+
+    /** The directory holding the objects of this store. */
+    private final File dir;
+    /** The JFR events and trace of the repository. */
+    private final Events events;
+    /** The trace of the repository. */
+    private final Trace trace;
+    /** The decoded commits and trees of the repository. */
+    private final ObjectCache cache;
+    /** The packs of this store, or null until they are first needed. */
+    private List<Pack> packs;
+    /** The buffers through which each thread reads the contents of new
+     *  objects. */
+    private final ThreadLocal<ByteBuffer> inputs =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+    /** The buffers through which each thread writes objects and copies
+     *  them out. */
+    private final ThreadLocal<ByteBuffer> outputs =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    /** A store keeping its objects in DIR, recording its work in EVENTS,
+     *  whose decoded commits and trees are kept in CACHE. */
+    ObjectStore(File dir, Events events, ObjectCache cache) {
+        this.dir = dir;
+        this.events = events;
+        this.trace = events.trace;
+        this.cache = cache;
+    }
+
+    /** Returns the cache of the decoded commits and trees of this store. */
+    ObjectCache cache() {
+        return cache;
+    }
+
+    /** Returns the file holding the loose object with the given ID. */
+    private File loose(String id) {
+        return join(dir, id.substring(0, SHARD_DIGITS), id.substring(SHARD_DIGITS));
+    }
+
+    /** Returns true iff the loose object file LOOSE exists, counting the
+     *  stat call in the trace. */
+    private boolean exists(File loose) {
+        trace.count("files stat'ed: objects");
+        return loose.isFile();
+    }
+
+    /** Returns the ID under which CONTENTS is stored as an object of the
+     *  given TYPE. The contents are prefixed with a Git-style
+     *  "<type> <length>" header before hashing, so objects of different
+     *  types never share an ID. */
+    static String id(String type, byte[] contents) {
+        return sha1(header(type, contents.length), contents);
+    }
+
+    /** Returns the ID under which CONTENTS is stored as a blob. */
+    static String blobID(byte[] contents) {
+        return id(BLOB, contents);
+    }
+
+    /** Returns the ID under which the contents of FILE would be stored as
+     *  a blob, reading it through a fixed-size buffer and storing nothing. */
+    static String blobID(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(header(BLOB, in.size()).getBytes(StandardCharsets.UTF_8));
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return bytesToHex(digest.digest());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the header of an object of the given TYPE and LENGTH. */
+    private static String header(String type, long length) {
+        return type + " " + length + "\0";
+    }
+
+    /** Store CONTENTS as an object of the given TYPE, unless an identical
+     *  object is already present, and return its ID. */
+    String put(String type, byte[] contents) {
+        Event event = events.begin(Events.HASH);
+        String id = id(type, contents);
+        if (event != null) {
+            Events.commit(event, (long) contents.length);
+        }
+        trace.count("bytes hashed", contents.length);
+        if (!contains(id)) {
+            write(type, contents.length,
+                  Channels.newChannel(new ByteArrayInputStream(contents)), id);
+        }
+        return id;
+    }
+
+    /** Store CONTENTS as a blob, unless an identical blob is already
+     *  present, and return its ID. */
+    String putBlob(byte[] contents) {
+        return put(BLOB, contents);
+    }
+
+    /** Store the contents of FILE as a blob, unless an identical blob is
+     *  already present, and return its ID. The file is read only once,
+     *  through a fixed-size buffer, so files of any size can be stored. */
+    String putBlob(File file) {
+        trace.count("files opened: working tree");
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return write(BLOB, in.size(), in, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Store the LENGTH bytes read from IN as a loose object of the given
+     *  TYPE, unless an identical object is already present, and return its
+     *  ID. The header and contents are hashed, unless their ID is already
+     *  known to be KNOWNID, and compressed as they are read, into a
+     *  temporary file that is then moved into place. */
+    @SuppressWarnings("try")
+    private String write(String type, long length, ReadableByteChannel in, String knownID) {
+        ByteBuffer input = inputs.get();
+        ByteBuffer output = outputs.get();
+        File tmp = null;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        Event event = events.begin(Events.OBJECT_WRITE);
+        long hashTime = 0;
+        try (Trace.Span span = trace.span("write object")) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            tmp = File.createTempFile("tmp-", null, dir);
+            try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                byte[] header = header(type, length).getBytes(StandardCharsets.UTF_8);
+                if (knownID == null) {
+                    digest.update(header);
+                }
+                deflater.setInput(header);
+                deflate(deflater, output, out, false);
+                long total = 0;
+                while (true) {
+                    // The deflater goes on reading from INPUT, so after the
+                    // last read it must be left flipped and empty
+                    input.clear();
+                    int n = in.read(input);
+                    input.flip();
+                    if (n < 0) {
+                        break;
+                    }
+                    total += n;
+                    if (knownID == null) {
+                        long start = event != null ? System.nanoTime() : 0;
+                        digest.update(input.duplicate());
+                        hashTime += event != null ? System.nanoTime() - start : 0;
+                    }
+                    deflater.setInput(input);
+                    deflate(deflater, output, out, false);
+                }
+                if (total != length) {
+                    throw error("File changed while it was being stored.");
+                }
+                deflate(deflater, output, out, true);
+            }
+            String id = knownID;
+            if (id == null) {
+                id = bytesToHex(digest.digest());
+                trace.count("bytes hashed", length);
+            }
+            File loose = loose(id);
+            boolean stored = !contains(id);
+            trace.count(stored ? "objects written" : "objects written: already present");
+            if (stored) {
+                loose.getParentFile().mkdir();
+                if (!tmp.renameTo(loose)) {
+                    throw error("Could not write object %s.", id);
+                }
+            }
+            if (event != null) {
+                Events.commit(event, id, type, length, hashTime, stored);
+            }
+            return id;
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            deflater.end();
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /** Write to OUT, through the buffer OUTPUT, everything DEFLATER can
+     *  produce from its current input, or all its remaining output if
+     *  FINISH. */
+    private static void deflate(Deflater deflater, ByteBuffer output, FileChannel out,
+                                boolean finish) throws IOException {
+        if (finish) {
+            deflater.finish();
+        }
+        while (finish ? !deflater.finished() : !deflater.needsInput()) {
+            output.clear();
+            deflater.deflate(output);
+            output.flip();
+            while (output.hasRemaining()) {
+                out.write(output);
+            }
+        }
+    }
+
+    /** Return the type and contents of the object with the given ID. */
+    @SuppressWarnings("try")
+    StoredObject read(String id) {
+        Event event = events.begin(Events.OBJECT_READ);
+        StoredObject object;
+        try (Trace.Span span = trace.span("read object")) {
+            object = load(id);
+        }
+        trace.count("objects read: " + object.type);
+        if (event != null) {
+            Events.commit(event, id, object.type, (long) object.contents.length,
+                          !loose(id).isFile());
+        }
+        return object;
+    }
+
+    /** Return the type and contents of the object with the given ID,
+     *  reading it from its loose file or a pack. */
+    private StoredObject load(String id) {
+        File loose = loose(id);
+        if (exists(loose)) {
+            trace.count("files opened: objects");
+            byte[] bytes;
+            try (InputStream in = new InflaterInputStream(new FileInputStream(loose))) {
+                bytes = in.readAllBytes();
+            } catch (IOException excp) {
+                throw error("Corrupt object %s.", id);
+            }
+            int end = 0;
+            while (bytes[end] != 0) {
+                end += 1;
+            }
+            String header = new String(bytes, 0, end, StandardCharsets.UTF_8);
+            byte[] contents = new byte[bytes.length - end - 1];
+            System.arraycopy(bytes, end + 1, contents, 0, contents.length);
+            return new StoredObject(header.substring(0, header.indexOf(' ')), contents);
+        }
+        for (Pack pack : packs()) {
+            StoredObject object = pack.read(id);
+            if (object != null) {
+                trace.count("objects read: from packs");
+                return object;
+            }
+        }
+        throw error("Missing object %s.", id);
+    }
+
+    /** Return the contents of the object with the given ID. */
+    byte[] get(String id) {
+        return read(id).contents;
+    }
+
+    /** Returns the object with the given ID opened for reading. A loose
+     *  object, or one stored whole in a pack, is inflated as it is read, so
+     *  it may be of any length; a delta in a pack is resolved in memory. */
+    ObjectStream open(String id) {
+        File loose = loose(id);
+        if (exists(loose)) {
+            trace.count("files opened: objects");
+            InputStream in = null;
+            try {
+                in = new InflaterInputStream(
+                    new BufferedInputStream(new FileInputStream(loose), BUFFER_SIZE));
+                StringBuilder header = new StringBuilder();
+                for (int c = in.read(); c != 0; c = in.read()) {
+                    if (c < 0) {
+                        throw error("Corrupt object %s.", id);
+                    }
+                    header.append((char) c);
+                }
+                int space = header.indexOf(" ");
+                ObjectStream object = new ObjectStream(
+                    header.substring(0, space), Long.parseLong(header.substring(space + 1)), in);
+                in = null;
+                return object;
+            } catch (IOException | NumberFormatException | IndexOutOfBoundsException excp) {
+                throw error("Corrupt object %s.", id);
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException excp) {
+                        // Only read from, so nothing is lost
+                    }
+                }
+            }
+        }
+        for (Pack pack : packs()) {
+            ObjectStream object = pack.open(id);
+            if (object != null) {
+                trace.count("objects read: from packs");
+                return object;
+            }
+        }
+        throw error("Missing object %s.", id);
+    }
+
+    /** Write the contents of the blob with the given ID to FILE, creating
+     *  or overwriting it. The bytes are copied exactly as they were added,
+     *  through a fixed-size buffer, from the blob {@link #open} gives. The
+     *  blob is found before FILE is touched, and written to a temporary
+     *  file beside it that is then moved over it, so an error leaves FILE
+     *  as it was. */
+    void copyBlob(String id, File file) {
+        File tmp = null;
+        try (ObjectStream blob = open(id)) {
+            tmp = File.createTempFile(".gitlet-tmp-", null, file.getParentFile());
+            try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                ReadableByteChannel contents = Channels.newChannel(blob.contents);
+                ByteBuffer output = outputs.get();
+                output.clear();
+                while (contents.read(output) >= 0) {
+                    output.flip();
+                    while (output.hasRemaining()) {
+                        out.write(output);
+                    }
+                    output.clear();
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            tmp = null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /** Return true iff an object with the given ID is present. */
+    boolean contains(String id) {
+        if (exists(loose(id))) {
+            return true;
+        }
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the type of the object with the given ID, which must be
+     *  present, reading no more of it than its header. */
+    String type(String id) {
+        File loose = loose(id);
+        if (exists(loose)) {
+            trace.count("files opened: objects");
+            try (InputStream in = new InflaterInputStream(new FileInputStream(loose))) {
+                StringBuilder type = new StringBuilder();
+                for (int c = in.read(); c != ' ' && c != -1; c = in.read()) {
+                    type.append((char) c);
+                }
+                return type.toString();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return pack.type(id);
+            }
+        }
+        throw error("Missing object %s.", id);
+    }
+
+    /** Returns the IDs of all objects, loose or packed, starting with
+     *  PREFIX, in ascending order. PREFIX must be a non-empty string of
+     *  lower-case hexadecimal digits. */
+    TreeSet<String> resolve(String prefix) {
+        TreeSet<String> found = new TreeSet<>();
+        List<String> shards = new ArrayList<>();
+        if (prefix.length() >= SHARD_DIGITS) {
+            shards.add(prefix.substring(0, SHARD_DIGITS));
+        } else {
+            for (int d = 0; d < HEX_DIGITS.length(); d += 1) {
+                shards.add(prefix + HEX_DIGITS.charAt(d));
+            }
+        }
+        for (String shard : shards) {
+            List<String> names = plainFilenamesIn(join(dir, shard));
+            if (names != null) {
+                for (String name : names) {
+                    if ((shard + name).startsWith(prefix)) {
+                        found.add(shard + name);
+                    }
+                }
+            }
+        }
+        for (Pack pack : packs()) {
+            pack.findPrefix(prefix, found);
+        }
+        return found;
+    }
+
+    /** Returns the packs of this store, opening their indexes on first use. */
+    private synchronized List<Pack> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            List<String> names = plainFilenamesIn(join(dir, "pack"));
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".pack")) {
+                        packs.add(new Pack(join(dir, "pack", name), trace));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Gather every object of this store, loose or packed, into a single
+     *  new pack, and remove the loose objects and old packs. HINTS maps the
+     *  IDs of objects to a key naming their type and path, in order from
+     *  newest to oldest; objects with the same key are stored as deltas
+     *  against their next newer neighbor where that pays off. Objects
+     *  without a hint, and those longer than {@link Pack#LARGE_OBJECT}, are
+     *  stored whole, the latter streamed from their loose files or old
+     *  packs without being held in memory. */
+    void repack(Map<String, String> hints) {
+        LinkedHashSet<String> ids = new LinkedHashSet<>();
+        List<String> loose = new ArrayList<>();
+        String[] shards = dir.list((d, name) -> name.length() == SHARD_DIGITS
+                                   && join(d, name).isDirectory());
+        for (String shard : shards) {
+            for (String name : plainFilenamesIn(join(dir, shard))) {
+                loose.add(shard + name);
+            }
+        }
+        ids.addAll(loose);
+        for (Pack pack : packs()) {
+            pack.ids(ids);
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        LinkedHashMap<String, List<String>> groups = new LinkedHashMap<>();
+        for (Map.Entry<String, String> hint : hints.entrySet()) {
+            if (ids.remove(hint.getKey())) {
+                groups.computeIfAbsent(hint.getValue(), k -> new ArrayList<>()).add(hint.getKey());
+            }
+        }
+        for (String id : ids) {
+            groups.put(id, List.of(id));
+        }
+
+        File packDir = join(dir, "pack");
+        packDir.mkdir();
+        File tmp = join(packDir, "tmp-pack");
+        File tmpIndex = join(packDir, "tmp-idx");
+        int count = 0;
+        for (List<String> group : groups.values()) {
+            count += group.size();
+        }
+        PackWriter writer = new PackWriter(tmp, count);
+        for (List<String> group : groups.values()) {
+            String baseID = null;
+            byte[] base = null;
+            for (String id : group) {
+                try (ObjectStream object = open(id)) {
+                    if (object.length > Pack.LARGE_OBJECT) {
+                        writer.add(id, object.type, object.length, object.contents);
+                        baseID = null;
+                        base = null;
+                    } else {
+                        byte[] contents = object.contents.readNBytes((int) object.length);
+                        if (contents.length != object.length) {
+                            throw error("Corrupt object %s.", id);
+                        }
+                        writer.add(id, object.type, contents, baseID, base);
+                        baseID = id;
+                        base = contents;
+                    }
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp);
+                }
+            }
+        }
+        File packFile = join(packDir, "pack-" + writer.finish(tmpIndex) + ".pack");
+        File indexFile = Pack.indexFile(packFile);
+        if (!tmp.renameTo(packFile) || !tmpIndex.renameTo(indexFile)) {
+            throw error("Could not write %s.", packFile.getName());
+        }
+
+        for (String name : plainFilenamesIn(packDir)) {
+            if (!name.equals(packFile.getName()) && !name.equals(indexFile.getName())) {
+                join(packDir, name).delete();
+            }
+        }
+        for (String id : loose) {
+            loose(id).delete();
+        }
+        for (String shard : shards) {
+            join(dir, shard).delete();
+        }
+        packs = null;
+    }
+}
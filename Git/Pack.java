@@ -0,0 +1,345 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A read-only pack file holding many objects in a single file.
+ *
+ *  A pack starts with the int MAGIC, the format VERSION and the number of
+ *  objects. Each object follows as its raw 20-byte ID, a kind byte, the
+ *  long length of its data, the raw ID of its delta base if it is stored
+ *  as a delta, and finally the long length of its data once
+ *  zlib-compressed and the compressed data. The kind byte is the code of
+ *  the object's type, with DELTA set if the data is a {@link Delta}
+ *  against the base rather than the contents themselves. The file ends
+ *  with the SHA-1 of everything before it. Packs of version 1, whose
+ *  lengths are ints, are still read.
+ *
+ *  The objects are located through the pack's {@link PackIndex}, kept
+ *  in a file of the same name ending in ".idx".
+ *
+ *  Objects recently used as delta bases are kept in a cache bounded by
+ *  BASE_CACHE_BYTES, so that reading neighboring versions of a file does
+ *  not resolve the same chain over and over. Objects larger than
+ *  LARGE_OBJECT are never stored as deltas, and can be streamed out of
+ *  the pack without being held in memory. A pack may be read by any
+ *  number of threads at once.
+ *
+ *  @author enmanuel hernandez
+ */
+class Pack {
+
+    /** The first four bytes of every pack: "GPAK". */
+    static final int MAGIC = 0x4750414b;
+    /** The version of the pack format. */
+    static final int VERSION = 2;
+    /** The bit of a kind byte marking a delta. */
+    static final int DELTA = 0x80;
+    /** The most bytes of delta bases kept in memory per pack. */
+    static final long BASE_CACHE_BYTES = 16L << 20;
+    /** The length beyond which objects are stored whole rather than as
+     *  deltas, and are not used as delta bases: one too large for the
+     *  cache of bases. */
+    static final long LARGE_OBJECT = BASE_CACHE_BYTES;
+    /** The longest array that can be allocated. */
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    /** The header of an object in a pack, after its ID. */
+    private static class Header {
+        /** The object's kind byte. */
+        final int kind;
+        /** The length of its data. */
+        final long length;
+        /** The ID of its delta base, or null if it is stored whole. */
+        final String baseID;
+        /** The length of its compressed data. */
+        final long compressedLength;
+
+        Header(int kind, long length, String baseID, long compressedLength) {
+            this.kind = kind;
+            this.length = length;
+            this.baseID = baseID;
+            this.compressedLength = compressedLength;
+        }
+    }
+
+    /** The pack file. */
+    private final File file;
+    /** The version of its format. */
+    private final int version;
+    /** The trace of the repository, counting reads and cache hits. */
+    private final Trace trace;
+    /** The index of the objects in this pack. */
+    private final PackIndex index;
+    /** Recently used delta bases, least recently used first. */
+    private final LinkedHashMap<String, byte[]> baseCache =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** The total length of the contents in baseCache. */
+    private long cachedBytes;
+
+    /** The pack stored in FILE, indexed by the {@link PackIndex} next to
+     *  it, counting its work in TRACE. A pack without an index is scanned
+     *  once to create one. */
+    Pack(File file, Trace trace) {
+        this.file = file;
+        this.trace = trace;
+        File indexFile = indexFile(file);
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            version = readVersion(in, file);
+            if (!indexFile.isFile()) {
+                writeIndex(in, version, file, indexFile);
+            }
+        } catch (EOFException excp) {
+            throw Utils.error("Truncated pack %s.", file.getName());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        index = new PackIndex(indexFile);
+    }
+
+    /** Returns the file holding the index of the pack in PACKFILE. */
+    static File indexFile(File packFile) {
+        String name = packFile.getName();
+        return new File(packFile.getParentFile(),
+                        name.substring(0, name.length() - ".pack".length()) + ".idx");
+    }
+
+    /** Returns the format version of the pack PACKFILE, read from the
+     *  start of IN. */
+    private static int readVersion(DataInput in, File packFile) throws IOException {
+        int version = in.readInt() == MAGIC ? in.readInt() : -1;
+        if (version != 1 && version != VERSION) {
+            throw Utils.error("%s is not a pack.", packFile.getName());
+        }
+        return version;
+    }
+
+    /** Returns the header of an object in a pack of the given VERSION,
+     *  read from IN just after its ID. */
+    private static Header readHeader(DataInput in, int version) throws IOException {
+        int kind = in.readUnsignedByte();
+        long length = version > 1 ? in.readLong() : in.readInt();
+        String baseID = null;
+        if ((kind & DELTA) != 0) {
+            byte[] raw = new byte[Commit.RAW_ID_LENGTH];
+            in.readFully(raw);
+            baseID = Utils.bytesToHex(raw);
+        }
+        long compressedLength = version > 1 ? in.readLong() : in.readInt();
+        if (length < 0 || compressedLength < 0) {
+            throw Utils.error("Corrupt object in pack.");
+        }
+        return new Header(kind, length, baseID, compressedLength);
+    }
+
+    /** Write to INDEXFILE the index of the pack in PACKFILE, of the given
+     *  VERSION, found by reading the headers of all its entries from IN,
+     *  which has just read the version. */
+    private static void writeIndex(DataInputStream packIn, int version, File packFile,
+                                   File indexFile) throws IOException {
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        byte[] raw = new byte[Commit.RAW_ID_LENGTH];
+        DataInputStream in = new DataInputStream(new BufferedInputStream(packIn));
+        int count = in.readInt();
+        int lengthBytes = version > 1 ? Long.BYTES : Integer.BYTES;
+        long offset = 3 * Integer.BYTES;
+        for (int i = 0; i < count; i += 1) {
+            in.readFully(raw);
+            offsets.put(Utils.bytesToHex(raw), offset);
+            Header header = readHeader(in, version);
+            in.skipNBytes(header.compressedLength);
+            offset += raw.length + 1 + 2 * lengthBytes
+                + (header.baseID != null ? raw.length : 0) + header.compressedLength;
+        }
+        in.readFully(raw);
+        PackIndex.write(indexFile, offsets, raw);
+    }
+
+    /** Returns the code stored in kind bytes for objects of TYPE. */
+    static int typeCode(String type) {
+        switch (type) {
+            case Commit.TYPE:
+                return 1;
+            case Tree.TYPE:
+                return 2;
+            case ObjectStore.BLOB:
+                return 3;
+            default:
+                throw Utils.error("Unknown object type %s.", type);
+        }
+    }
+
+    /** Returns the object type whose code is in the low bits of KIND. */
+    static String typeName(int kind) {
+        switch (kind & ~DELTA) {
+            case 1:
+                return Commit.TYPE;
+            case 2:
+                return Tree.TYPE;
+            case 3:
+                return ObjectStore.BLOB;
+            default:
+                throw Utils.error("Unknown object kind %d.", kind);
+        }
+    }
+
+    /** Returns true iff this pack holds the object with the given ID. */
+    boolean contains(String id) {
+        return index.offset(id) >= 0;
+    }
+
+    /** Add to INTO the IDs of all objects in this pack. */
+    void ids(Collection<String> into) {
+        for (int i = 0; i < index.size(); i += 1) {
+            into.add(index.id(i));
+        }
+    }
+
+    /** Add to INTO the ID of every object in this pack starting with the
+     *  lower-case hexadecimal PREFIX, which is not empty. */
+    void findPrefix(String prefix, Collection<String> into) {
+        index.findPrefix(prefix, into);
+    }
+
+    /** Returns the type of the object with the given ID, which must be in
+     *  this pack. Only the object's kind byte is read. */
+    String type(String id) {
+        trace.count("files opened: packs");
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(index.offset(id) + Commit.RAW_ID_LENGTH);
+            return typeName(in.readUnsignedByte());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the object with the given ID, or null if it is not in this pack. */
+    ObjectStore.StoredObject read(String id) {
+        long offset = index.offset(id);
+        if (offset < 0) {
+            return null;
+        }
+        trace.count("files opened: packs");
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(offset + Commit.RAW_ID_LENGTH);
+            Header header = readHeader(in, version);
+            if (header.length > MAX_ARRAY || header.compressedLength > MAX_ARRAY) {
+                throw Utils.error("Object %s is too large to be read whole.", id);
+            }
+            byte[] compressed = new byte[(int) header.compressedLength];
+            in.readFully(compressed);
+            byte[] data = inflate(compressed, (int) header.length);
+            if (header.baseID != null) {
+                data = Delta.apply(readBase(header.baseID), data);
+            }
+            return new ObjectStore.StoredObject(typeName(header.kind), data);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the object with the given ID opened for reading, or null if
+     *  it is not in this pack. An object stored whole is inflated as it is
+     *  read, so it may be of any length; a delta is resolved in memory. */
+    ObjectStore.ObjectStream open(String id) {
+        long offset = index.offset(id);
+        if (offset < 0) {
+            return null;
+        }
+        Header header;
+        trace.count("files opened: packs");
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            in.seek(offset + Commit.RAW_ID_LENGTH);
+            header = readHeader(in, version);
+            if (header.baseID == null) {
+                // The channel reads on from the data, and closing it closes the file
+                InputStream data = new InflaterInputStream(new BufferedInputStream(
+                    Channels.newInputStream(in.getChannel()), ObjectStore.BUFFER_SIZE));
+                in = null;
+                return new ObjectStore.ObjectStream(typeName(header.kind), header.length, data);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException excp) {
+                    // Only read from, so nothing is lost
+                }
+            }
+        }
+        byte[] contents = read(id).contents;
+        return new ObjectStore.ObjectStream(typeName(header.kind), contents.length,
+                                            new ByteArrayInputStream(contents));
+    }
+
+    /** Returns the contents of the delta base with the given ID, from the
+     *  cache if possible. */
+    private byte[] readBase(String id) {
+        synchronized (baseCache) {
+            byte[] contents = baseCache.get(id);
+            if (contents != null) {
+                trace.count("pack base cache: hits");
+                return contents;
+            }
+        }
+        trace.count("pack base cache: misses");
+        ObjectStore.StoredObject base = read(id);
+        if (base == null) {
+            throw Utils.error("Missing delta base %s.", id);
+        }
+        synchronized (baseCache) {
+            if (baseCache.put(id, base.contents) == null) {
+                cachedBytes += base.contents.length;
+            }
+            Iterator<Map.Entry<String, byte[]>> eldest = baseCache.entrySet().iterator();
+            while (cachedBytes > BASE_CACHE_BYTES && eldest.hasNext()) {
+                cachedBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+        return base.contents;
+    }
+
+    /** Returns COMPRESSED inflated to its original LENGTH bytes. */
+    private static byte[] inflate(byte[] compressed, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] result = new byte[length];
+            int n = 0;
+            while (n < length) {
+                int inflated = inflater.inflate(result, n, length - n);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw Utils.error("Corrupt object in pack.");
+                }
+                n += inflated;
+            }
+            return result;
+        } catch (DataFormatException excp) {
+            throw Utils.error("Corrupt object in pack.");
+        } finally {
+            inflater.end();
+        }
+    }
+}
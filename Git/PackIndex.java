@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.SortedMap;
+
+/** The index of a {@link Pack}: the offset of every object in it, sorted
+ *  by ID.
+ *
+ *  An index starts with the int MAGIC and the format VERSION, followed by
+ *  a fanout table of 256 ints whose entry b is the number of objects whose
+ *  ID starts with a byte no greater than b; the last entry is therefore
+ *  the number of objects. Then come the raw 20-byte IDs of all objects in
+ *  ascending order, the long offset of each object's entry in the pack in
+ *  the same order, and finally the checksum of the pack.
+ *
+ *  The file is mapped into memory rather than read, so looking up an
+ *  object touches only the fanout entry for its first byte and the few
+ *  IDs a binary search within that range visits.
+ *
+ *  @author enmanuel hernandez
+ */
+class PackIndex {
+
+    /** The first four bytes of every index: "GIDX". */
+    static final int MAGIC = 0x47494458;
+    /** The version of the index format. */
+    static final int VERSION = 1;
+    /** The number of entries in the fanout table. */
+    static final int FANOUT = 256;
+    /** The offset of the fanout table. */
+    private static final int FANOUT_START = 2 * Integer.BYTES;
+    /** The offset of the sorted IDs. */
+    private static final int IDS_START = FANOUT_START + FANOUT * Integer.BYTES;
+
+    /** The mapped index file. */
+    private final MappedByteBuffer map;
+    /** The number of objects indexed. */
+    private final int count;
+
+    /** The index stored in FILE. */
+    PackIndex(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        if (map.capacity() < IDS_START || map.getInt(0) != MAGIC
+            || map.getInt(Integer.BYTES) != VERSION) {
+            throw Utils.error("%s is not a pack index.", file.getName());
+        }
+        count = map.getInt(FANOUT_START + (FANOUT - 1) * Integer.BYTES);
+        if (map.capacity() != IDS_START + (long) count * (Commit.RAW_ID_LENGTH + Long.BYTES)
+                              + Commit.RAW_ID_LENGTH) {
+            throw Utils.error("Truncated pack index %s.", file.getName());
+        }
+    }
+
+    /** Write to FILE the index of a pack whose checksum is CHECKSUM and
+     *  whose objects are at the given OFFSETS, keyed by ID. */
+    static void write(File file, SortedMap<String, Long> offsets, byte[] checksum) {
+        int[] fanout = new int[FANOUT];
+        for (String id : offsets.keySet()) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            int total = 0;
+            for (int n : fanout) {
+                total += n;
+                out.writeInt(total);
+            }
+            for (String id : offsets.keySet()) {
+                out.write(Utils.hexToBytes(id));
+            }
+            for (long offset : offsets.values()) {
+                out.writeLong(offset);
+            }
+            out.write(checksum);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the number of objects indexed. */
+    int size() {
+        return count;
+    }
+
+    /** Returns the ID of the Ith object in ID order. */
+    String id(int i) {
+        byte[] raw = new byte[Commit.RAW_ID_LENGTH];
+        map.get(IDS_START + i * Commit.RAW_ID_LENGTH, raw);
+        return Utils.bytesToHex(raw);
+    }
+
+    /** Returns the offset in the pack of the Ith object in ID order. */
+    private long offset(int i) {
+        return map.getLong(IDS_START + count * Commit.RAW_ID_LENGTH + i * Long.BYTES);
+    }
+
+    /** Returns the offset in the pack of the object with the given ID, or
+     *  -1 if it is not indexed. */
+    long offset(String id) {
+        int i = first(id);
+        if (i < end(id) && compare(i, id) == 0 && id.length() == 2 * Commit.RAW_ID_LENGTH) {
+            return offset(i);
+        }
+        return -1;
+    }
+
+    /** Add to INTO the ID of every indexed object starting with the
+     *  lower-case hexadecimal PREFIX, which is not empty. */
+    void findPrefix(String prefix, Collection<String> into) {
+        int end = end(prefix);
+        for (int i = first(prefix); i < end && compare(i, prefix) == 0; i += 1) {
+            into.add(id(i));
+        }
+    }
+
+    /** Returns the position of the first ID not less than PREFIX,
+     *  searching only the fanout range of its first byte. */
+    private int first(String prefix) {
+        int lo = fanout(firstByte(prefix, 0) - 1);
+        int hi = fanout(firstByte(prefix, 15));
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the end of the fanout range of IDs that may start with PREFIX. */
+    private int end(String prefix) {
+        return fanout(firstByte(prefix, 15));
+    }
+
+    /** Returns the first byte of the IDs starting with PREFIX, taking LOW
+     *  as the low digit if PREFIX has only one. */
+    private static int firstByte(String prefix, int low) {
+        int high = Character.digit(prefix.charAt(0), 16);
+        return prefix.length() == 1 ? high * 16 + low
+            : high * 16 + Character.digit(prefix.charAt(1), 16);
+    }
+
+    /** Returns the number of IDs whose first byte is at most B. */
+    private int fanout(int b) {
+        return b < 0 ? 0 : map.getInt(FANOUT_START + b * Integer.BYTES);
+    }
+
+    /** Compares the Ith ID, truncated to the length of the hexadecimal
+     *  PREFIX, with PREFIX. */
+    private int compare(int i, String prefix) {
+        int base = IDS_START + i * Commit.RAW_ID_LENGTH;
+        for (int d = 0; d < prefix.length(); d += 1) {
+            int b = map.get(base + d / 2) & 0xff;
+            int digit = d % 2 == 0 ? b >>> 4 : b & 0xf;
+            int diff = digit - Character.digit(prefix.charAt(d), 16);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,181 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/** Writes a {@link Pack} file, one object at a time.
+ *
+ *  Callers offer each object together with a similar object already
+ *  written, typically the neighboring version of the same file. The object
+ *  is stored as a delta against it when that saves at least half of the
+ *  object's size and keeps delta chains no longer than MAX_DEPTH. Objects
+ *  too large to hold in memory are instead read from a stream and stored
+ *  whole.
+ *
+ *  @author enmanuel hernandez
+ */
+class PackWriter {
+
+    /** The longest chain of deltas that may have to be resolved to read
+     *  an object. */
+    static final int MAX_DEPTH = 16;
+
+    /** The directory holding the pack. */
+    private final File dir;
+    /** The stream writing the pack, which also computes its checksum. */
+    private final DataOutputStream out;
+    /** The number of bytes written so far. */
+    private long offset;
+    /** The digest of everything written so far. */
+    private final MessageDigest digest;
+    /** The delta chain length of each object written so far, by ID. */
+    private final HashMap<String, Integer> depths = new HashMap<>();
+    /** The offset of each object written so far, by ID. */
+    private final TreeMap<String, Long> offsets = new TreeMap<>();
+    /** The number of objects promised in the header. */
+    private final int count;
+    /** Compresses the data of every object. */
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+    /** A writer of a pack holding COUNT objects into FILE. */
+    PackWriter(File file, int count) {
+        this.count = count;
+        this.dir = file.getParentFile();
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+            out = new DataOutputStream(new DigestOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)), digest));
+            out.writeInt(Pack.MAGIC);
+            out.writeInt(Pack.VERSION);
+            out.writeInt(count);
+            offset = 3 * Integer.BYTES;
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Write the object of the given TYPE with the given ID and CONTENTS.
+     *  If BASEID is not null, BASE holds the contents of that object,
+     *  which must already have been written, and the object may be stored
+     *  as a delta against it. */
+    void add(String id, String type, byte[] contents, String baseID, byte[] base) {
+        try {
+            byte[] data = contents;
+            int depth = 0;
+            if (baseID != null && depths.get(baseID) < MAX_DEPTH) {
+                byte[] delta = Delta.create(base, contents);
+                if (delta.length < contents.length / 2) {
+                    data = delta;
+                    depth = depths.get(baseID) + 1;
+                }
+            }
+            byte[] compressed = deflate(data);
+            writeHeader(id, type, data.length, depth > 0 ? baseID : null, compressed.length);
+            out.write(compressed);
+            offset += compressed.length;
+            depths.put(id, depth);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Write the object of the given TYPE with the given ID, whose LENGTH
+     *  bytes of contents are read from IN, whole. Since its compressed
+     *  length comes first, it is compressed into a temporary file beside
+     *  the pack and then copied in, so it may be of any length. */
+    void add(String id, String type, long length, InputStream in) {
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("tmp-", null, dir);
+            long total = 0;
+            deflater.reset();
+            try (DeflaterOutputStream compressed = new DeflaterOutputStream(
+                    new FileOutputStream(tmp), deflater, ObjectStore.BUFFER_SIZE)) {
+                byte[] buf = new byte[ObjectStore.BUFFER_SIZE];
+                for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                    compressed.write(buf, 0, n);
+                    total += n;
+                }
+            }
+            if (total != length) {
+                throw Utils.error("Corrupt object %s.", id);
+            }
+            writeHeader(id, type, length, null, tmp.length());
+            offset += Files.copy(tmp.toPath(), out);
+            depths.put(id, 0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /** Write the header of the object of the given TYPE with the given ID,
+     *  whose data of LENGTH bytes is a delta against BASEID, unless it is
+     *  null, and takes COMPRESSEDLENGTH bytes compressed, recording where
+     *  it starts. */
+    private void writeHeader(String id, String type, long length, String baseID,
+                             long compressedLength) throws IOException {
+        offsets.put(id, offset);
+        out.write(Utils.hexToBytes(id));
+        out.writeByte(Pack.typeCode(type) | (baseID != null ? Pack.DELTA : 0));
+        out.writeLong(length);
+        if (baseID != null) {
+            out.write(Utils.hexToBytes(baseID));
+        }
+        out.writeLong(compressedLength);
+        offset += Commit.RAW_ID_LENGTH + 1 + 2 * Long.BYTES
+            + (baseID != null ? Commit.RAW_ID_LENGTH : 0);
+    }
+
+    /** Finish the pack, which must hold as many objects as promised, write
+     *  its {@link PackIndex} to INDEX, and return its checksum. */
+    String finish(File index) {
+        if (depths.size() != count) {
+            throw Utils.error("Internal error: pack holds %d objects, not %d.",
+                              depths.size(), count);
+        }
+        try {
+            out.flush();
+            byte[] checksum = digest.digest();
+            out.write(checksum);
+            out.close();
+            deflater.end();
+            PackIndex.write(index, offsets, checksum);
+            return Utils.bytesToHex(checksum);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns DATA compressed with zlib. */
+    private byte[] deflate(byte[] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream result = new ByteArrayOutputStream(data.length / 2 + 64);
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buf);
+            result.write(buf, 0, n);
+        }
+        return result.toByteArray();
+    }
+}
@@ -1,6 +1,10 @@
 package gitlet;
 
 import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -8,30 +12,182 @@ import java.util.Set;
 import static gitlet.Utils.*;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Event;
 
 
 /** Represents a gitlet repository.
  * This class handles the core operations of the Gitlet version-control system.
  * It includes methods to initialize a repository, stage changes, commit changes,
- * restore files from commits, and print commit history.
+ * restore files from commits, and report commit history.
+ *
+ * A Repository is opened on a working directory and may serve any number of commands, from
+ * any number of threads: commands that only read the repository run concurrently, while
+ * those changing it run one at a time. Results are returned rather than printed, and errors
+ * are reported by throwing a GitletException, leaving the caller to decide how to report
+ * them. What it reads from the .gitlet directory is cached: the refs, the index and
+ * the object store's packs are kept until their files change, and decoded commits and trees,
+ * which never change, are kept in an {@link ObjectCache} of recently used ones, up to a budget
+ * of bytes. A repository kept open by the {@link Daemon} thus answers later commands without
+ * reading most of its state again.
  *
  *  @author enmanuel hernandez
  */
+// Locks and spans are held by try-with-resources statements that never refer to them
+@SuppressWarnings("try")
 public class Repository {
 
     /**
      * The current working directory.
      */
     public static final File CWD = new File(System.getProperty("user.dir"));
+
+    /**
+     * The working directory of this repository.
+     */
+    private final File root;
     /**
      * The .gitlet directory.
      */
-    public static final File GITLET_DIR = Utils.join(CWD, ".gitlet");
+    private final File gitletDir;
+    /**
+     * The values read from files in the .gitlet directory.
+     */
+    private final FileCache files;
+    /**
+     * Recently read commits and trees, by ID.
+     */
+    private final ObjectCache cache;
+
+    /**
+     * The JFR events and trace of this repository.
+     */
+    private final Events events;
+
+    /**
+     * The lock letting any number of threads read the repository at once, or one change it.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * True iff writes of the index are deferred until the next commit or flush.
+     */
+    private boolean deferring;
+    /**
+     * The index as changed since it was last written, if writing it is deferred.
+     */
+    private Index pendingIndex;
+    /**
+     * The temporary file written to read the file system's clock while writes of the index are
+     * deferred, or null if there is none yet.
+     */
+    private File clock;
+
+    /**
+     * A lock held until closed.
+     */
+    private interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Open the repository whose working directory is ROOT, which need not be initialized yet.
+     *
+     * @param root The working directory.
+     */
+    public Repository(File root) {
+        this(root, new Trace(false), ObjectCache.DEFAULT_BUDGET);
+    }
+
+    /**
+     * Open the repository whose working directory is ROOT, recording its work in TRACE.
+     *
+     * @param root The working directory.
+     * @param trace The trace of the repository's work.
+     * @param cacheBudget The most bytes of decoded commits and trees to keep in memory.
+     */
+    Repository(File root, Trace trace, long cacheBudget) {
+        this.root = root;
+        this.gitletDir = Utils.join(root, ".gitlet");
+        this.events = new Events(trace);
+        this.files = new FileCache(trace);
+        this.cache = new ObjectCache(cacheBudget, trace);
+    }
+
+    /**
+     * Acquire the lock for reading the repository, released by closing the result.
+     *
+     * @param operation The name of the operation the lock is held for.
+     */
+    private Held reading(String operation) {
+        return acquire(lock.readLock(), false, operation);
+    }
+
+    /**
+     * Acquire the lock for changing the repository, released by closing the result. A thread
+     * holding it may also acquire the lock for reading.
+     *
+     * @param operation The name of the operation the lock is held for.
+     */
+    private Held writing(String operation) {
+        return acquire(lock.writeLock(), true, operation);
+    }
+
+    /**
+     * Acquire a lock, recording the operation holding it, and any long wait for it, as JFR
+     * events and as a span of the trace.
+     *
+     * @param lock The lock.
+     * @param exclusive True iff the lock is the one for changing the repository.
+     * @param operation The name of the operation the lock is held for.
+     * @return The lock held, released by closing it.
+     */
+    private Held acquire(Lock lock, boolean exclusive, String operation) {
+        Trace.Span span = events.trace.span(operation);
+        Event command = events.begin(Events.COMMAND);
+        Event wait = events.begin(Events.LOCK_WAIT);
+        lock.lock();
+        if (wait != null) {
+            Events.commit(wait, operation, exclusive);
+        }
+        if (command == null && !events.trace.enabled()) {
+            return lock::unlock;
+        }
+        return () -> {
+            lock.unlock();
+            if (command != null) {
+                Events.commit(command, operation);
+            }
+            span.close();
+        };
+    }
+
+    /**
+     * Return the .gitlet directory of this repository.
+     */
+    File gitletDir() {
+        return gitletDir;
+    }
+
+    /**
+     * Forget everything cached, so that all state is read afresh from the .gitlet directory.
+     */
+    public void invalidate() {
+        try (Held held = writing("invalidate")) {
+            files.clear();
+            cache.clear();
+        }
+    }
 
     /**
      * Allows for persistence to happen
      */
-    public static boolean gitlet(String command) {
+    public boolean gitlet(String command) {
         if (command.equals("init")) {
             return true;
         } else {
@@ -44,46 +200,49 @@ public class Repository {
      *
      * @return true if the .gitlet directory exists, false otherwise.
      */
-    public static boolean checkIfGitletExists() {
-        File allFiles = Utils.join(GITLET_DIR);
+    public boolean checkIfGitletExists() {
+        File allFiles = Utils.join(gitletDir);
         List<String> s = plainFilenamesIn(allFiles);
         return s != null;
     }
 
+    /**
+     * Create a new repository in the working directory, holding only the initial commit.
+     */
+    public void init() {
+        try (Held held = writing("init")) {
+            if (checkIfGitletExists()) {
+                throw error("A Gitlet version-control system already exists in the current directory.");
+            }
+            Persistence();
+            Init();
+        }
+    }
+
     /**
      * Set up the .gitlet directory structure to allow for version control persistence.
      */
-    public static void Persistence() {
+    private void Persistence() {
         // Create the .gitlet directory
-        File gitlet = new File(".gitlet");
+        File gitlet = gitletDir;
         gitlet.mkdir();
 
-        // Create subdirectories for staging, staged file removals, commits, and branches
-        File stages = Utils.join(gitlet, "stages");
-        stages.mkdir();
-        File removal = Utils.join(gitlet, "stageRemoval");
-        removal.mkdir();
-        File commits = Utils.join(gitlet, "commits");
-        commits.mkdir();
+        // Create the objects and branches subdirectories; the index is written on first use
+        File objects = Utils.join(gitlet, "objects");
+        objects.mkdir();
 
         // Create files to store information about commits and the current branch
         File head = Utils.join(gitlet, "head");
         createNewFile(head);
 
-        LinkedList<Commit> list = new LinkedList<>();
         File all = Utils.join(gitlet, "allCommits");
         createNewFile(all);
-        Utils.writeObject(all, list);
 
-        File branches = Utils.join(GITLET_DIR, "branches");
+        File branches = Utils.join(gitletDir, "branches");
         branches.mkdir();
         File nameOfHeadBranch = Utils.join(gitlet, "currentBranch");
         createNewFile(nameOfHeadBranch);
         Utils.writeObject(nameOfHeadBranch, "main");
-
-        File namesEver = Utils.join(GITLET_DIR, "allFileNamesEver");
-        createNewFile(namesEver);
-        Utils.writeObject(namesEver, new LinkedList<String>());
     }
 
     /**
@@ -91,21 +250,51 @@ public class Repository {
      *
      * @param file The file to be created.
      */
-    private static void createNewFile(File file) {
+    private void createNewFile(File file) {
         try {
             file.createNewFile();
-        } catch (IOException error) {
-            System.out.println("Error creating file: " + error.getMessage());
+        } catch (IOException excp) {
+            throw error("Error creating file: %s", excp.getMessage());
         }
     }
 
 
+    /**
+     * Return the content-addressed store holding the repository's commits, trees and blobs.
+     * Commands fetch it once and pass it on. The same store is returned until its pack
+     * directory changes, so that its packs are read at most once.
+     */
+    private ObjectStore objects() {
+        File objects = Utils.join(gitletDir, "objects");
+        return files.get(join(objects, "pack"), pack -> new ObjectStore(objects, events, cache));
+    }
+
+    /**
+     * Take a snapshot of the working directory, recording the scan as a JFR event and a span
+     * of the trace.
+     *
+     * @return The stat data of every file that is not ignored, by path.
+     */
+    private SortedMap<String, Index.Stat> scan() {
+        Event event = events.begin(Events.SCAN);
+        SortedMap<String, Index.Stat> workingTree;
+        try (Trace.Span span = events.trace.span("scan working tree")) {
+            workingTree = WorkingTree.scan(root);
+        }
+        events.trace.count("files stat'ed: working tree", workingTree.size());
+        if (event != null) {
+            Events.commit(event, root.getPath(), workingTree.size());
+        }
+        return workingTree;
+    }
+
     /**
      * Initialize the Gitlet repository by creating the initial commit.
      */
-    public static void Init() {
-        Commit initialCommit = createInitialCommit();
-        saveCommitToDirectory(initialCommit);
+    private void Init() {
+        ObjectStore objects = objects();
+        Commit initialCommit = createInitialCommit(objects);
+        saveCommit(objects, initialCommit);
         updateAllCommits(initialCommit);
         updateHead(initialCommit);
         updateCurrentBranch(initialCommit);
@@ -114,31 +303,29 @@ public class Repository {
     /**
      * Create the initial commit when initializing the Gitlet repository.
      *
+     * @param objects The object store to write the initial commit's tree to.
      * @return The initial commit object representing the starting state of the repository.
      */
-    private static Commit createInitialCommit() {
-        List<String> filesInCWD = Utils.plainFilenamesIn(CWD);
-        ArrayList<String> cwdContents = new ArrayList<>();
-        for (String fileName : filesInCWD) {
-            cwdContents.add(readContentsAsString(Utils.join(CWD, fileName)));
-        }
-        Commit initialCommit = new Commit("initial commit", "*main",
-                new ArrayList<>(), new ArrayList<>(), filesInCWD, cwdContents);
-        initialCommit.setDate(0);
-        initialCommit.setTime(initialCommit.getDate());
-        initialCommit.setHash(sha1(Utils.serialize(initialCommit)));
-        return initialCommit;
+    private Commit createInitialCommit(ObjectStore objects) {
+        String emptyTree = new Tree().write(objects);
+        return new Commit("initial commit", 0, "*main", new ArrayList<>(), emptyTree);
     }
 
     /**
-     * Save the commit to the commits directory using its hash code as the filename.
+     * Save the commit to the object store and set its hash code to the ID it is stored under.
      *
+     * @param objects The object store to save the commit to.
      * @param commit The commit object to be saved.
      */
-    private static void saveCommitToDirectory(Commit commit) {
-        File commitsDir = Utils.join(GITLET_DIR, "commits");
-        File commitFile = Utils.join(commitsDir, commit.getHash());
-        Utils.writeObject(commitFile, commit);
+    private void saveCommit(ObjectStore objects, Commit commit) {
+        commit.setHash(objects.put(Commit.TYPE, commit.encode()));
+    }
+
+    /**
+     * Return the journal recording every commit made in the repository.
+     */
+    private CommitJournal allCommits() {
+        return new CommitJournal(Utils.join(gitletDir, "allCommits"));
     }
 
     /**
@@ -146,11 +333,57 @@ public class Repository {
      *
      * @param commit The commit object to be added to the list of all commits.
      */
-    private static void updateAllCommits(Commit commit) {
-        File allCommitsFile = Utils.join(GITLET_DIR, "allCommits");
-        LinkedList<Commit> allCommits = Utils.readObject(allCommitsFile, LinkedList.class);
-        allCommits.addFirst(commit);
-        Utils.writeObject(allCommitsFile, allCommits);
+    private void updateAllCommits(Commit commit) {
+        allCommits().append(commit);
+    }
+
+    /**
+     * Read the commit ID held by a ref file such as the head or a branch.
+     *
+     * @param ref The ref file to be read.
+     * @return The ID of the commit the ref points to.
+     */
+    private String readRef(File ref) {
+        return files.get(ref, file -> readContentsAsString(file).trim());
+    }
+
+    /**
+     * Point a ref file such as the head or a branch at a commit.
+     *
+     * @param ref The ref file to be written.
+     * @param commitID The ID of the commit the ref should point to.
+     */
+    private void writeRef(File ref, String commitID) {
+        Event event = events.begin(Events.REF_UPDATE);
+        writeContents(ref, commitID, "\n");
+        if (event != null) {
+            Events.commit(event, gitletDir.toPath().relativize(ref.toPath()).toString(), commitID);
+        }
+    }
+
+    /**
+     * Read the commit with the given full ID from the object store.
+     *
+     * @param objects The object store holding the commit.
+     * @param commitID The full ID of the commit.
+     * @return The commit object.
+     */
+    private Commit readCommit(ObjectStore objects, String commitID) {
+        return cache.get(commitID, id -> {
+            try (Trace.Span span = events.trace.span("decode commit")) {
+                return Commit.decode(id, objects.get(id));
+            }
+        }, Commit::weight);
+    }
+
+    /**
+     * Read the commit the head pointer currently points to.
+     *
+     * @param objects The object store holding the commit.
+     * @return The head commit.
+     */
+    private Commit readHeadCommit(ObjectStore objects) {
+        return readCommit(objects, readRef(Utils.join(gitletDir, "head")));
     }
 
     /**
@@ -158,11 +391,8 @@ public class Repository {
      *
      * @param commit The commit object to be set as the head.
      */
-    private static void updateHead(Commit commit) {
-        File head = Utils.join(GITLET_DIR, "head");
-        LinkedList<Commit> hCommits = new LinkedList<>();
-        hCommits.addFirst(commit);
-        Utils.writeObject(head, hCommits);
+    private void updateHead(Commit commit) {
+        writeRef(Utils.join(gitletDir, "head"), commit.getHash());
     }
 
     /**
@@ -170,173 +400,330 @@ public class Repository {
      *
      * @param commit The commit object to be set as the latest commit in the current branch.
      */
-    private static void updateCurrentBranch(Commit commit) {
-        File currentBranchName = Utils.join(GITLET_DIR, "currentBranch");
-        String branchName = Utils.readObject(currentBranchName, String.class);
-        File branch = Utils.join(GITLET_DIR, "branches", branchName);
-        LinkedList<Commit> branchCommits = new LinkedList<>();
-        branchCommits.addFirst(commit);
-        Utils.writeObject(branch, branchCommits);
+    private void updateCurrentBranch(Commit commit) {
+        writeRef(Utils.join(gitletDir, "branches", readCurrentBranch()), commit.getHash());
     }
 
     /**
-     * Stage changes for the specified file in the current working directory.
+     * Read the name of the current branch.
      *
-     * @param fileName The name of the file to be staged.
+     * @return The name of the branch the head belongs to.
      */
-    public static void stage(String fileName) {
-        LinkedList<String> allFileNamesEver = readObject(join(GITLET_DIR, "allFileNamesEver"), LinkedList.class);
-        List<String> filenames = plainFilenamesIn(join(CWD));
+    private String readCurrentBranch() {
+        return files.get(Utils.join(gitletDir, "currentBranch"), file -> {
+            try (Trace.Span span = events.trace.span("Utils.readObject")) {
+                return Utils.readObject(file, String.class);
+            }
+        });
+    }
 
-        if (!filenames.contains(fileName)) {
-            handleStageRemoval(fileName);
-            System.exit(0);
-        }
+    /**
+     * List the names of all branches.
+     *
+     * @return The names of the branches, in lexicographic order.
+     */
+    private List<String> branchNames() {
+        return files.get(Utils.join(gitletDir, "branches"), Utils::plainFilenamesIn);
+    }
 
-        File heads = join(GITLET_DIR, "branches", readObject(join(GITLET_DIR, "currentBranch"), String.class));
-        LinkedList<Commit> headCommits = readObject(heads, LinkedList.class);
-        ArrayList<File> curr = headCommits.getFirst().getFileList();
-        File cwdFiles = join(CWD, fileName);
-        String x = readContentsAsString(cwdFiles);
-        File stages = join(GITLET_DIR, "stages");
-        File n = join(stages, fileName);
-        writeContents(n, x);
+    /**
+     * Return the file holding the repository's index.
+     */
+    private File indexFile() {
+        return Utils.join(gitletDir, "index");
+    }
 
-        List<String> stagedFiles = plainFilenamesIn(stages);
-        List<String> removalStageFiles = plainFilenamesIn(join(GITLET_DIR, "stageRemoval"));
+    /**
+     * Read the repository's index. The index returned may be the one read by an earlier
+     * command, so a command changing it must write it back before it can fail.
+     */
+    private Index readIndex() {
+        if (pendingIndex != null) {
+            return pendingIndex;
+        }
+        return files.get(indexFile(), Index::read);
+    }
 
-        for (int i = 0; i < curr.size(); i ++) {
-            if (stagedFiles.contains(curr.get(i).getName())) {
-                String s = headCommits.getFirst().getBlob().get(i);
-                File fStage = join(stages, curr.get(i).getName());
-                if (s.equals(readContentsAsString(fStage))) {
-                    fStage.delete();
-                }
-                if (removalStageFiles.contains(curr.get(i).getName())) {
-                    fStage = join(GITLET_DIR, "stageRemoval", curr.get(i).getName());
-                    if (s.equals(readContentsAsString(fStage))) {
-                        fStage.delete();
-                    }
-                }
-            }
+    /**
+     * Write the repository's index, or only keep it in memory until the next commit if writes
+     * are deferred.
+     *
+     * @param index The index.
+     */
+    private void writeIndex(Index index) {
+        if (deferring) {
+            // Stamped as the index file would be, so the files it records stay clean
+            index.stamp(fileSystemTime());
+            pendingIndex = index;
+        } else {
+            index.write(indexFile());
         }
+    }
 
-        if (!allFileNamesEver.contains(fileName)) {
-            allFileNamesEver.add(fileName);
+    /**
+     * Return the current time by the clock of the file system holding the .gitlet directory,
+     * which may be coarser than the system clock: the modification time of a file written now.
+     * The file is a temporary one of this repository's own, created on first use and kept
+     * until the deferred index is flushed, so each call only rewrites it.
+     *
+     * @return The time, in nanoseconds since the epoch.
+     */
+    private long fileSystemTime() {
+        try {
+            if (clock == null) {
+                clock = Files.createTempFile(gitletDir.toPath(), "clock-", null).toFile();
+            }
+            // A write sets the modification time, as truncating an empty file might not
+            writeContents(clock, new byte[1]);
+            return Index.Stat.of(clock.toPath()).mtime;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
         }
+    }
 
-        writeObject(join(GITLET_DIR, "allFileNamesEver"), allFileNamesEver);
+    /**
+     * Defer writing the index until the next commit or flush, so that a series of commands
+     * changing it write it once. Until then, other processes do not see the changes.
+     */
+    public void deferWrites() {
+        try (Held held = writing("deferWrites")) {
+            deferring = true;
+        }
     }
 
-    private static void handleStageRemoval(String fileName) {
-        List<String> removals = plainFilenamesIn(join(GITLET_DIR, "stageRemoval"));
-        if (removals.contains(fileName)) {
-            File removed = join(GITLET_DIR, "stageRemoval", fileName);
-            String contents = readContentsAsString(removed);
-            removed.delete();
-            File newFile = join(CWD, fileName);
-            try {
-                newFile.createNewFile();
-            } catch (IOException error) {
-                System.out.println("Error");
+    /**
+     * Write the index if its changes were deferred.
+     */
+    public void flush() {
+        try (Held held = writing("flush")) {
+            if (pendingIndex != null) {
+                pendingIndex.write(indexFile());
+                pendingIndex = null;
+            }
+            if (clock != null) {
+                clock.delete();
+                clock = null;
             }
-            writeContents(newFile, contents);
-            stage(fileName);
-        } else {
-            System.out.println("File does not exist.");
         }
     }
 
     /**
-     * Stage file removal for the specified file in the current working directory.
+     * Convert a file name given on the command line into the path under which the file is
+     * tracked: relative to the working directory, normalized, and separated by '/'.
      *
-     * @param fileName The name of the file to be marked for removal.
+     * @param fileName The file name, relative to the working directory.
+     * @return The tracked path, or null if the name lies outside the working directory or
+     *         inside the .gitlet directory.
      */
-    public static void stageRemoval(String fileName) {
-        File cwdFile = Utils.join(CWD, fileName);
-        if (!cwdFile.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+    private String trackedPath(String fileName) {
+        Path path = root.toPath().resolve(fileName).normalize();
+        if (!path.startsWith(root.toPath()) || path.startsWith(gitletDir.toPath())
+            || path.equals(root.toPath())) {
+            return null;
         }
-        File stagesDir = Utils.join(GITLET_DIR, "stageRemoval");
-        Utils.writeContents(Utils.join(stagesDir, fileName), readContentsAsString(cwdFile));
+        StringBuilder result = new StringBuilder();
+        for (Path name : root.toPath().relativize(path)) {
+            result.append(result.length() == 0 ? "" : "/").append(name);
+        }
+        return result.toString();
     }
+
     /**
-     * Stage file removal for the specified file in a commit.
+     * Write a blob to the file at the given tracked path, creating its parent directories as
+     * needed.
      *
-     * @param fileName The name of the file to be marked for removal in the next commit.
+     * @param objects The object store holding the blob.
+     * @param path The tracked path of the file.
+     * @param blobID The ID of the blob holding the file's contents.
      */
-    public static void stageRemovalCommit(String fileName) {
-        File cwdFile = Utils.join(CWD, fileName);
-        if (!cwdFile.exists()) {
+    private void writeWorkingFile(ObjectStore objects, String path, String blobID) {
+        File file = join(root, path);
+        file.getParentFile().mkdirs();
+        objects.copyBlob(blobID, file);
+    }
+
+    /**
+     * Delete the file at the given tracked path, along with any of its parent directories
+     * left empty, up to but not including the working directory.
+     *
+     * @param path The tracked path of the file.
+     */
+    private void deleteWorkingFile(String path) {
+        File file = join(root, path);
+        if (file.isDirectory() || !file.delete()) {
             return;
         }
-
-        File stagesDir = Utils.join(GITLET_DIR, "stageRemoval");
-        File stagedFile = Utils.join(stagesDir, fileName);
-        Utils.writeContents(stagedFile, readContentsAsString(cwdFile));
+        for (File dir = file.getParentFile(); !dir.equals(root) && dir.delete(); ) {
+            dir = dir.getParentFile();
+        }
     }
 
     /**
-     * Commit the staged changes and create a new commit object.
+     * Stage changes for the specified files in the current working directory. Each name may be
+     * a file, a directory such as ".", whose files are all staged, or a glob such as "*.txt" or
+     * "src/**", matched against the paths of the files in the working directory. Nothing is
+     * staged unless every name matches something. Only files that are present are staged, so
+     * a directory or glob never stages a removal, and untracked files they hold that are
+     * ignored by .gitletignore rules are left out. Files whose stat data still matches their
+     * index entries are known to be unchanged and are not read; the others are hashed and
+     * stored in parallel, and the index is written once at the end.
      *
-     * @param message The commit message provided by the user.
+     * @param fileNames The names of the files to be staged.
      */
-    public static void commit(String message) {
-        File stagedDir = Utils.join(GITLET_DIR, "stages");
-        File stageRemovalDir = Utils.join(GITLET_DIR, "stageRemoval");
-        File head = Utils.join(GITLET_DIR, "head");
-        LinkedList<Commit> headCommits = Utils.readObject(head, LinkedList.class);
-        Commit headCommit = headCommits.getFirst();
+    public void stage(String... fileNames) {
+        try (Held held = writing("stage")) {
+            ObjectStore objects = objects();
+            Index index = readIndex();
+            String headTree = readHeadCommit(objects).getTree();
+            SortedMap<String, Index.Stat> workingTree = null;
+            TreeMap<String, Index.Stat> files = new TreeMap<>();
+            Map<String, String> restored = new TreeMap<>();
+
+            for (String fileName : fileNames) {
+                Path resolved = root.toPath().resolve(fileName).normalize();
+                boolean isGlob = fileName.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0);
+                boolean isDirectory = resolved.toFile().isDirectory();
+                String path = trackedPath(fileName);
+                boolean matched = false;
+
+                if (isGlob || isDirectory && (path != null || resolved.equals(root.toPath()))) {
+                    if (workingTree == null) {
+                        workingTree = scan();
+                    }
+                    if (isGlob) {
+                        String glob = fileName.startsWith("./") ? fileName.substring(2) : fileName;
+                        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+                        for (Map.Entry<String, Index.Stat> file : workingTree.entrySet()) {
+                            if (matcher.matches(Path.of(file.getKey()))) {
+                                files.put(file.getKey(), file.getValue());
+                                matched = true;
+                            }
+                        }
+                    } else {
+                        // '0' follows '/', so this is every path inside the directory
+                        files.putAll(path == null ? workingTree : workingTree.subMap(path + "/", path + "0"));
+                        // Tracked files inside ignored directories are still staged
+                        for (Index.Entry entry : index.entries()) {
+                            if ((path == null || entry.path.startsWith(path + "/"))
+                                && !workingTree.containsKey(entry.path)
+                                && join(root, entry.path).isFile()) {
+                                files.put(entry.path, Index.Stat.of(join(root, entry.path).toPath()));
+                            }
+                        }
+                        matched = true;
+                    }
+                } else if (path != null && join(root, path).isFile()) {
+                    files.put(path, Index.Stat.of(join(root, path).toPath()));
+                    matched = true;
+                } else if (path != null && index.get(path) == null) {
+                    // Adding back a file staged for removal restores its committed version
+                    String headBlob = Tree.lookup(objects, headTree, path);
+                    if (headBlob != null) {
+                        restored.put(path, headBlob);
+                        matched = true;
+                    }
+                }
 
-        List<String> stagedFiles = Utils.plainFilenamesIn(stagedDir);
-        List<String> removalFiles = Utils.plainFilenamesIn(stageRemovalDir);
+                if (!matched) {
+                    throw error("File does not exist.");
+                }
+            }
 
-        if (stagedFiles.isEmpty() && removalFiles.isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
-        }
+            for (Map.Entry<String, String> file : restored.entrySet()) {
+                writeWorkingFile(objects, file.getKey(), file.getValue());
+                files.put(file.getKey(), Index.Stat.of(join(root, file.getKey()).toPath()));
+            }
 
-        ArrayList<File> filesToCommit = new ArrayList<>();
-        ArrayList<String> blobsToCommit = new ArrayList<>();
+            List<Map.Entry<String, Index.Stat>> dirty = new ArrayList<>();
+            for (Map.Entry<String, Index.Stat> file : files.entrySet()) {
+                Index.Entry entry = index.get(file.getKey());
+                if (entry == null || !index.isClean(entry, file.getValue())) {
+                    dirty.add(file);
+                }
+            }
+            if (dirty.isEmpty()) {
+                return;
+            }
 
-        for (String fileName : stagedFiles) {
-            File stagedFile = Utils.join(stagedDir, fileName);
-            filesToCommit.add(stagedFile);
-            blobsToCommit.add(readContentsAsString(stagedFile));
-            stagedFile.delete();
+            // Each file is hashed and stored in one pass; the index records only its blob ID
+            List<Index.Entry> added = dirty.parallelStream()
+                .map(file -> new Index.Entry(file.getKey(), file.getValue(),
+                                             objects.putBlob(join(root, file.getKey()))))
+                .collect(Collectors.toList());
+            for (Index.Entry entry : added) {
+                index.put(entry);
+            }
+            writeIndex(index);
         }
+    }
 
-        for (String fileName : removalFiles) {
-            File removalFile = Utils.join(stageRemovalDir, fileName);
-            File cwdFile = Utils.join(CWD, fileName);
-            if (cwdFile.exists()) {
-                cwdFile.delete();
+    /**
+     * Compute the changes staged in the index relative to the given commit, reading the
+     * commit's tree only if the index was not last compared with it.
+     *
+     * @param objects The object store holding the commit's tree.
+     * @param commit The commit to compare the index with, normally the head.
+     * @param index The index.
+     * @return A map, sorted by path, from each added or changed file to its blob ID, and
+     *         from each removed file to null.
+     */
+    private TreeMap<String, String> stagedChanges(ObjectStore objects, Commit commit,
+                                                         Index index) {
+        TreeMap<String, String> changes = new TreeMap<>();
+        if (commit.getTree().equals(index.tree())) {
+            for (String path : index.differences().keySet()) {
+                Index.Entry e = index.get(path);
+                changes.put(path, e == null ? null : e.id);
             }
-            removalFile.delete();
+            return changes;
         }
-
-        List<String> filesInCWD = Utils.plainFilenamesIn(CWD);
-        ArrayList<String> cwdContents = new ArrayList<>();
-        for (String fileName : filesInCWD) {
-            File cwdFile = Utils.join(CWD, fileName);
-            cwdContents.add(readContentsAsString(cwdFile));
+        Map<String, String> committed = Tree.flatten(objects, commit.getTree());
+        for (Index.Entry e : index.entries()) {
+            if (!e.id.equals(committed.remove(e.path))) {
+                changes.put(e.path, e.id);
+            }
         }
+        for (String path : committed.keySet()) {
+            changes.put(path, null);
+        }
+        return changes;
+    }
 
-        Commit newCommit = new Commit(message, "*main", filesToCommit,
-                blobsToCommit, filesInCWD, cwdContents);
-        newCommit.setHash(Utils.sha1(Utils.serialize(newCommit)));
-
-        saveCommitToDirectory(newCommit);
-        updateAllCommits(newCommit);
-        headCommits.addFirst(newCommit);
-        Utils.writeObject(head, headCommits);
+    /**
+     * Commit the staged changes and create a new commit object.
+     *
+     * @param message The commit message provided by the user.
+     * @return The new commit.
+     */
+    public Commit commit(String message) {
+        try (Held held = writing("commit")) {
+            ObjectStore objects = objects();
+            Commit headCommit = readHeadCommit(objects);
+            Index index = readIndex();
+            Map<String, String> changes = stagedChanges(objects, headCommit, index);
+
+            if (changes.isEmpty()) {
+                throw error("No changes added to the commit.");
+            }
 
-        String branchName = Utils.readObject(Utils.join(GITLET_DIR, "currentBranch"), String.class);
-        File branch = Utils.join(GITLET_DIR, "branches", branchName);
-        LinkedList<Commit> branchCommits = Utils.readObject(branch, LinkedList.class);
-        branchCommits.addFirst(newCommit);
-        Utils.writeObject(branch, branchCommits);
+            // Only the directories containing changed files get new trees
+            String tree = Tree.update(objects, headCommit.getTree(), changes);
+
+            ArrayList<String> parents = new ArrayList<>();
+            parents.add(headCommit.getHash());
+            Commit newCommit = new Commit(message, "*main", parents, tree);
+
+            saveCommit(objects, newCommit);
+            updateAllCommits(newCommit);
+            updateHead(newCommit);
+            updateCurrentBranch(newCommit);
+            // The index already matches the new commit, so it only records that it was compared
+            // with its tree. It does so last, so that it never names a tree no commit has.
+            index.compared(tree);
+            writeIndex(index);
+            flush();
+            return newCommit;
+        }
     }
 
     /**
@@ -344,22 +731,18 @@ public class Repository {
      *
      * @param fileName The name of the file to be restored.
      */
-    public static void restoreFile(String fileName) {
-        File file = join(CWD, fileName);
-        File head = join(GITLET_DIR, "head");
-        LinkedList<Commit> commits = readObject(head, LinkedList.class);
-        Commit latestCommit = commits.getFirst();
-
-        for (int i = 0; i < latestCommit.getFileList().size(); i++) {
-            File commitFile = latestCommit.getFileList().get(i);
-            if (commitFile.getName().equals(fileName)) {
-                writeContents(file, latestCommit.getBlob().get(i));
-                return;
+    public void restoreFile(String fileName) {
+        try (Held held = writing("restoreFile")) {
+            ObjectStore objects = objects();
+            Commit latestCommit = readHeadCommit(objects);
+            String path = trackedPath(fileName);
+            String blobID = path == null ? null : Tree.lookup(objects, latestCommit.getTree(), path);
+
+            if (blobID == null) {
+                throw error("File does not exist in the latest commit.");
             }
+            writeWorkingFile(objects, path, blobID);
         }
-
-        System.out.println("File does not exist in the latest commit.");
-        System.exit(0);
     }
 
 
@@ -369,58 +752,17 @@ public class Repository {
      * @param commitID The ID of the commit containing the file to be restored.
      * @param fileName The name of the file to be restored.
      */
-    public static void restoreCommit(String commitID, String fileName) {
-        File commitDir = Utils.join(GITLET_DIR, "commits");
-        List<String> commitIDs = plainFilenamesIn(commitDir);
-
-        for (int i = 0; i < commitIDs.size(); i++) {
-            if (commitID.length() >= 7) {
-                String shortID = readObject(join(commitDir, commitIDs.get(i)), Commit.class)
-                        .getHash().substring(0, 6);
-                if (commitIDs.get(i).equals(commitID) || commitID.substring(0, 6).equals(shortID)) {
-                    commitID = readObject(join(commitDir, commitIDs.get(i)), Commit.class).getHash();
-                    break;
-                }
-            }
-            if (i == commitIDs.size() - 1) {
-                System.out.println("No commit with that id exists.");
-                System.exit(0);
-            }
-        }
-
-        File file1 = Utils.join(commitDir, commitID);
-        Commit commit = Utils.readObject(file1, Commit.class);
-        ArrayList<File> commitFileList = commit.getFileList();
-        boolean fileFound = false;
-
-        for (File file : commitFileList) {
-            if (file.getName().compareTo(fileName) == 0) {
-                File curr = Utils.join(CWD, fileName);
-                Utils.writeContents(curr, commit.getBlob().get(commitFileList.indexOf(file)));
-                fileFound = true;
-                break;
-            }
-        }
-
-        if (!fileFound) {
-            List<String> cwdFiles = plainFilenamesIn(CWD);
-            for (int i = 0; i < commitFileList.size(); i++) {
-                File currentFile = commitFileList.get(i);
-                if (!cwdFiles.contains(currentFile.getName())) {
-                    File retrieve = Utils.join(CWD, fileName);
-                    try {
-                        retrieve.createNewFile();
-                        Utils.writeContents(retrieve, commit.getBlob().get(i));
-                    } catch (IOException error) {
-                        System.out.println("Error creating the file.");
-                    }
-                }
+    public void restoreCommit(String commitID, String fileName) {
+        try (Held held = writing("restoreCommit")) {
+            ObjectStore objects = objects();
+            Commit commit = readCommit(objects, findFullID(objects, commitID));
+            String path = trackedPath(fileName);
+            String blobID = path == null ? null : Tree.lookup(objects, commit.getTree(), path);
+
+            if (blobID == null) {
+                throw error("File does not exist in that commit.");
             }
-        }
-
-        List<String> cwdFiles = plainFilenamesIn(CWD);
-        if (!fileFound && !cwdFiles.contains(fileName)) {
-            System.out.println("File does not exist in that commit.");
+            writeWorkingFile(objects, path, blobID);
         }
     }
 
@@ -428,104 +770,129 @@ public class Repository {
      * removes the file from the staging area if it was marked for addition.
      * If the file is tracked in the current commit, it marks it to be removed in the next commit (staged removal).
      */
-    public static void rm(String fileName) {
-        File currentCommitFile = join(GITLET_DIR, "branches", readObject(
-                join(GITLET_DIR, "currentBranch"), String.class));
-        LinkedList<Commit> commitList = readObject(currentCommitFile, LinkedList.class);
-        Commit headCommit = commitList.getFirst();
-        ArrayList<File> currentFiles = headCommit.getFileList();
-        List<String> removalFiles = plainFilenamesIn(join(GITLET_DIR, "stageRemoval"));
-        List<String> cwdFiles = plainFilenamesIn(CWD);
-        boolean inHead = currentFiles.stream().anyMatch(file -> file.getName().equals(fileName));
-
-        if (inHead) {
-            if (!removalFiles.contains(fileName) && !cwdFiles.contains(fileName)) {
-                File toAdd = join(join(GITLET_DIR, "stageRemoval"), fileName);
-                writeObject(toAdd, currentFiles.stream()
-                        .filter(file -> file.getName().equals(fileName))
-                        .findFirst().orElse(null));
-                return;
+    public void rm(String fileName) {
+        try (Held held = writing("rm")) {
+            ObjectStore objects = objects();
+            Index index = readIndex();
+            String path = trackedPath(fileName);
+            Index.Entry entry = path == null ? null : index.get(path);
+            String headBlob = path == null ? null
+                : Tree.lookup(objects, readHeadCommit(objects).getTree(), path);
+
+            if (headBlob == null && entry == null) {
+                throw error("No reason to remove the file.");
             }
-            stageRemoval(fileName);
-            restrictedDelete(fileName);
-        } else {
-            File staged = join(GITLET_DIR, "stages");
-            File fileToDelete = join(staged, fileName);
-            if (fileToDelete.delete()) {
-                return;
+            if (headBlob != null) {
+                deleteWorkingFile(path);
             }
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            index.remove(path);
+            writeIndex(index);
         }
     }
 
 
     /**
-     * Display the log of commits, showing commit details in chronological order.
+     * Return the history of the head commit, following first parents back to the initial
+     * commit.
+     *
+     * @return The commits, starting with the head commit.
      */
-    public static void log() {
-        LinkedList<Commit> listCommits = readCommitsFromHead();
-
-        for (Commit c : listCommits) {
-            printCommitDetails(c);
+    public List<Commit> log() {
+        try (Held held = reading("log")) {
+            ObjectStore objects = objects();
+            List<Commit> history = new ArrayList<>();
+            String commitID = readRef(Utils.join(gitletDir, "head"));
+            while (commitID != null) {
+                Commit c = readCommit(objects, commitID);
+                history.add(c);
+                commitID = c.getParent();
+            }
+            return history;
         }
     }
 
-    private static LinkedList<Commit> readCommitsFromHead() {
-        File coms = Utils.join(GITLET_DIR, "head");
-        return Utils.readObject(coms, LinkedList.class);
-    }
-
-    private static void printCommitDetails(Commit c) {
-        System.out.println("===");
-        System.out.println("commit " + c.getHash());
-        System.out.println("Date: " + c.getTime());
-        System.out.println(c.getMessage() + "\n");
+    /**
+     * Pass every commit ever made in the repository to an action, as it is read from the
+     * commit journal, so that the history is never held in memory as a whole.
+     *
+     * @param action The action, called with the commits, newest first.
+     */
+    public void globalLog(Consumer<Commit> action) {
+        try (Held held = reading("globalLog")) {
+            allCommits().forEach(action);
+        }
     }
 
     /**
-     * displays the log of all commits in the repository, showing commit details in chronological order.
+     * Return the name of the current branch.
      */
-    public static void globalLog() {
-        List<Commit> listCommits = readObject(join(GITLET_DIR, "allCommits"), LinkedList.class);
-        for (Commit c : listCommits) {
-            System.out.println("===");
-            System.out.println("commit " + c.getHash());
-            System.out.println("Date: " + c.getTime());
-            System.out.println(c.getMessage() + "\n");
+    public String currentBranch() {
+        try (Held held = reading("currentBranch")) {
+            return readCurrentBranch();
         }
     }
 
     /**
-     * displays the status of the repository, showing branch information and the staged and removed files.
+     * Return the names of all branches, in lexicographic order.
      */
-    public static void status() {
-        System.out.println("=== Branches ===");
-        String currentBranchName = Utils.readObject(Utils.join(GITLET_DIR, "currentBranch"), String.class);
-        List<String> branches = Utils.plainFilenamesIn(Utils.join(GITLET_DIR, "branches"));
-        for (String branch : branches) {
-            System.out.println(branch.equals(currentBranchName) ? "*" + branch : branch);
+    public List<String> branches() {
+        try (Held held = reading("branches")) {
+            return branchNames();
         }
+    }
 
-        System.out.print("\n");
-        System.out.println("=== Staged Files ===");
-        List<String> staged = Utils.plainFilenamesIn(Utils.join(GITLET_DIR, "stages"));
-        for (String file : staged) {
-            System.out.println(file);
+    /**
+     * Compares the head commit, the index and the working directory: the files staged for
+     * addition or removal, the tracked files with unstaged changes and the untracked files.
+     * Tracked files found unchanged only by reading them get their index entries refreshed
+     * afterwards, so that they need not be read again. The head commit's files are taken from
+     * the index where it was last compared with the head commit's tree; otherwise the tree is
+     * read, and the index then records how it differs from it.
+     *
+     * @return The status of the repository.
+     */
+    public Status status() {
+        Status status;
+        Index read;
+        long changes;
+        String headTree;
+        try (Held held = reading("status")) {
+            ObjectStore objects = objects();
+            read = readIndex();
+            changes = read.changes();
+            headTree = readHeadCommit(objects).getTree();
+            Iterable<Map.Entry<String, String>> committed;
+            if (headTree.equals(read.tree())) {
+                committed = read.treeFiles();
+            } else {
+                committed = Tree.flatten(objects, headTree).entrySet();
+            }
+            status = new Status(root, scan(), read, committed, events);
         }
 
-        System.out.print("\n");
-        System.out.println("=== Removed Files ===");
-        List<String> stagedRemoval = Utils.plainFilenamesIn(Utils.join(GITLET_DIR, "stageRemoval"));
-        for (String file : stagedRemoval) {
-            System.out.println(file);
+        boolean compared = headTree.equals(read.tree());
+        if (!status.refreshed().isEmpty() || !compared) {
+            try (Held held = writing("status refresh")) {
+                // Skip entries changed by other commands since the status was taken
+                Index index = readIndex();
+                boolean changed = false;
+                if (!compared && index == read && index.changes() == changes) {
+                    index.compared(headTree, status.differences());
+                    changed = true;
+                }
+                for (Index.Entry entry : status.refreshed()) {
+                    Index.Entry current = index.get(entry.path);
+                    if (current != null && current.id.equals(entry.id)) {
+                        index.put(entry);
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    writeIndex(index);
+                }
+            }
         }
-
-        System.out.print("\n");
-        System.out.println("=== Modifications Not Staged For Commit ===");
-        System.out.print("\n");
-        System.out.println("=== Untracked Files ===");
-        System.out.print("\n");
+        return status;
     }
 
     /**
@@ -533,44 +900,37 @@ public class Repository {
      *
      * @param name The name of the new branch to be created.
      */
-    public static void branch(String name) {
-        File branches = Utils.join(GITLET_DIR, "branches");
-        List<String> branchNames = plainFilenamesIn(branches);
+    public void branch(String name) {
+        try (Held held = writing("branch")) {
+            File branches = Utils.join(gitletDir, "branches");
+            List<String> branchNames = branchNames();
 
-        if (branchNames.contains(name)) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
-        }
-
-        File currentBranchFile = Utils.join(GITLET_DIR, "currentBranch");
-        String currentBranchName = Utils.readObject(currentBranchFile, String.class);
-        File currentBranch = Utils.join(branches, currentBranchName);
+            if (branchNames.contains(name)) {
+                throw error("A branch with that name already exists.");
+            }
 
-        File newBranch = Utils.join(branches, name);
-        LinkedList<Commit> commits = Utils.readObject(currentBranch, LinkedList.class);
-        Utils.writeObject(newBranch, commits);
+            writeRef(Utils.join(branches, name), readRef(Utils.join(gitletDir, "head")));
+        }
     }
 
     /**
-     * Finds and prints the commit hash for all commits with the given commit message.
+     * Finds all commits with the given commit message, passing each one's ID to an action as
+     * the commit journal is read.
      *
      * @param commitMsg The commit message to be searched for.
+     * @param action The action, called with the IDs of the commits found, newest first.
+     * @return The number of commits found.
      */
-    public static void find(String commitMsg) {
-        File allCommitsFile = Utils.join(GITLET_DIR, "allCommits");
-        LinkedList<Commit> allCommits = readObject(allCommitsFile, LinkedList.class);
-        int count = 0;
-
-        for (Commit commit : allCommits) {
-            if (commit.getMessage().equals(commitMsg)) {
-                System.out.println(commit.getHash());
-                count++;
-            }
-        }
-
-        if (count == 0) {
-            System.out.println("Found no commit with that message.");
-            System.exit(0);
+    public int find(String commitMsg, Consumer<String> action) {
+        try (Held held = reading("find")) {
+            int[] found = {0};
+            allCommits().forEach(commit -> {
+                if (commit.getMessage().equals(commitMsg)) {
+                    found[0] += 1;
+                    action.accept(commit.getHash());
+                }
+            });
+            return found[0];
         }
     }
 
@@ -579,93 +939,136 @@ public class Repository {
      *
      * @param ID The ID of the commit to reset to.
      */
-    public static void reset(String ID) {
-        ID = findFullID(ID);
-        Commit comm = readObject(Utils.join(GITLET_DIR, "commits", ID), Commit.class);
-
-        /*Check if there are any untracked files to be commited*/
-        Set<String> filesInCommit = new HashSet<>(comm.getCWD());
-
-        File heads = Utils.join(GITLET_DIR, "head");
-        LinkedList<Commit> head = readObject(heads, LinkedList.class);
-        List<String> stringList = plainFilenamesIn(CWD);
+    public void reset(String ID) {
+        try (Held held = writing("reset")) {
+            ObjectStore objects = objects();
+            Commit comm = readCommit(objects, findFullID(objects, ID));
+
+            checkoutCommit(objects, readHeadCommit(objects), comm);
+            updateHead(comm);
+            updateCurrentBranch(comm);
+        }
+    }
 
-        for (String fileName : stringList) {
-            if (!head.get(0).getCWD().contains(fileName)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                System.exit(0);
+    /**
+     * Replaces the files tracked by the current commit in the working directory with those
+     * tracked by the target commit, and resets the index to match it. Refuses, leaving everything
+     * untouched, if an untracked file would be overwritten.
+     * Only the subtrees that differ between the two commits are compared, and a file already
+     * matching the target is not rewritten if its stat data shows it unchanged since it was
+     * added or checked out.
+     *
+     * @param objects The object store holding both commits' trees and blobs.
+     * @param current The commit the working directory currently reflects.
+     * @param target The commit whose files should be checked out.
+     */
+    private void checkoutCommit(ObjectStore objects, Commit current, Commit target) {
+        List<Tree.Change> changes = Tree.diff(objects, current.getTree(), target.getTree(), "");
+
+        // A directory where the target has a file is in the way only if it holds files other
+        // than those about to be deleted
+        Set<String> deleted = new HashSet<>();
+        for (Tree.Change change : changes) {
+            if (change.newID == null) {
+                deleted.add(change.path);
             }
         }
-
-        for (int i = 0; i < stringList.size(); i += 1) {
-            if (!head.get(0).getCWD().contains(stringList.get(i))) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                System.exit(0);
+        for (Tree.Change change : changes) {
+            File file = join(root, change.path);
+            if (change.oldID == null && (file.isDirectory()
+                ? holdsOtherFiles(file, change.path + "/", deleted) : file.exists())) {
+                throw error("There is an untracked file in the way; delete it, or add and commit it first.");
             }
         }
 
-        LinkedList<String> contents = new LinkedList<>();
-
-        for (int i = 0; i < head.get(0).getCWD().size(); i += 1) {
-            contents.add(head.get(0).cwdCons().get(i));
+        for (Tree.Change change : changes) {
+            if (change.newID == null) {
+                deleteWorkingFile(change.path);
+            }
         }
-        LinkedList<String> allFileNamesEver = readObject(Utils.join
-                (GITLET_DIR, "allFileNamesEver"), LinkedList.class);
 
-        for (String fileName : stringList) {
-            if (filesInCommit.contains(fileName)) {
-                String currentContents = readContentsAsString(Utils.join(CWD, fileName));
-                if (!contents.contains(currentContents)) {
-                    System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                    System.exit(0);
+        // The new index holds the stat data of the files just written, so they start out clean
+        Index old = readIndex();
+        Index index = new Index();
+        Tree.walk(objects, target.getTree(), "", (path, blobID) -> {
+            Index.Entry entry = old.get(path);
+            File file = join(root, path);
+            if (entry != null && entry.id.equals(blobID) && file.isFile()) {
+                Index.Stat stat = Index.Stat.of(file.toPath());
+                if (old.isClean(entry, stat)) {
+                    index.put(entry);
+                    return;
                 }
             }
+            writeWorkingFile(objects, path, blobID);
+            index.put(new Index.Entry(path, Index.Stat.of(file.toPath()), blobID));
+        });
+        index.compared(target.getTree());
+        writeIndex(index);
+    }
+
+    /**
+     * Tell whether a directory holds any file, at any depth, other than the given ones.
+     *
+     * @param dir The directory.
+     * @param prefix The tracked path of the directory, followed by '/'.
+     * @param paths The tracked paths of the files to leave out.
+     * @return True iff the directory holds some other file.
+     */
+    private boolean holdsOtherFiles(File dir, String prefix, Set<String> paths) {
+        String[] names = dir.list();
+        if (names == null) {
+            return false;
         }
-        List<String> stage = plainFilenamesIn(Utils.join(GITLET_DIR, "stages"));
-        if (stage.size() > 0) {
-            System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-            System.exit(0);
-        }
-        for (int i = 0; i < stringList.size(); i += 1) {
-            if (comm.getCWD().contains(stringList.get(i))) {
-                restoreCommit(ID, stringList.get(i));
-            } else {
-                Utils.join(CWD, stringList.get(i)).delete();
+        for (String name : names) {
+            File file = new File(dir, name);
+            if (file.isDirectory() ? holdsOtherFiles(file, prefix + name + "/", paths)
+                : !paths.contains(prefix + name)) {
+                return true;
             }
         }
-        LinkedList<Commit> newH = new LinkedList<>();
-        for (int i = 0; i < head.size(); i += 1) {
-            if (head.get(i).getHash().equals(ID)) {
-                newH.addFirst(head.get(i));
-                break;
-            }
-            newH.addFirst(head.get(i));
+        return false;
+    }
+
+    /**
+     * Return the commit with the given ID, which may be abbreviated.
+     *
+     * @param commitID The full or abbreviated ID of the commit.
+     * @return The commit.
+     */
+    public Commit getCommit(String commitID) {
+        try (Held held = reading("getCommit")) {
+            ObjectStore objects = objects();
+            return readCommit(objects, findFullID(objects, commitID));
         }
-        Utils.writeObject(heads, newH);
     }
 
     /**
      * Helper function to find the full commit ID from a shortened commit ID (shortID).
+     * Candidates come from the object store's pack indexes and loose objects; only
+     * their types are read, so no commit needs to be decoded.
      *
+     * @param objects The object store holding the commits.
      * @param shortID The shortened commit ID.
-     * @return The full commit ID if found, or null if no matching commit is found.
+     * @return The full commit ID if exactly one commit matches; otherwise throws a GitletException.
      */
-    public static String findFullID(String shortID) {
-        File c = Utils.join(GITLET_DIR, "commits");
-        List<String> filenames = plainFilenamesIn(c);
-
-        for (String filename : filenames) {
-            Commit commit = readObject(join(c, filename), Commit.class);
-            String commitShortID = commit.getHash().substring(0, 6);
-
-            if (filename.equals(shortID) || shortID.equals(commitShortID)) {
-                return commit.getHash();
+    private String findFullID(ObjectStore objects, String shortID) {
+        List<String> matches = new ArrayList<>();
+        if (!shortID.isEmpty() && shortID.length() <= 2 * Commit.RAW_ID_LENGTH
+            && shortID.chars().allMatch(c -> HEX_DIGITS.indexOf(c) >= 0)) {
+            for (String id : objects.resolve(shortID)) {
+                if (objects.type(id).equals(Commit.TYPE)) {
+                    matches.add(id);
+                }
             }
         }
 
-        System.out.println("No commit with that id exists.");
-        System.exit(0);
-        return null; // This line is unreachable, but needed to satisfy the compiler.
+        if (matches.isEmpty()) {
+            throw error("No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw error("Commit id %s is ambiguous; use more digits.", shortID);
+        }
+        return matches.get(0);
     }
 
     /**
@@ -674,92 +1077,31 @@ public class Repository {
      *
      * @param name The name of the branch to switch to.
      */
-    public static void switchBranch(String name) {
-        File branches = join(GITLET_DIR, "branches");
-        File currentBranchName = join(GITLET_DIR, "currentBranch");
-        File head = join(GITLET_DIR, "head");
-
-        String currentBranch = readObject(currentBranchName, String.class);
-        LinkedList<Commit> headCommit = readObject(head, LinkedList.class);
-
-        List<String> l = plainFilenamesIn(branches);
-        if (!l.contains(name)) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
-        }
-
-        if (name.equals(currentBranch)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
-        }
-
-        LinkedList<Commit> commitsInBranch = readObject(join(branches, name), LinkedList.class);
-        List<String> currentWD = plainFilenamesIn(CWD);
-
-        if (currentWD.size() != headCommit.get(0).getCWD().size()) {
-            System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-            System.exit(0);
-        }
-
-        for (int i = 0; i < currentWD.size(); i += 1) {
-            if (!headCommit.get(0).getCWD().contains(currentWD.get(i))) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                System.exit(0);
+    public void switchBranch(String name) {
+        try (Held held = writing("switchBranch")) {
+            File branches = join(gitletDir, "branches");
+            File currentBranchName = join(gitletDir, "currentBranch");
+            File head = join(gitletDir, "head");
+
+            String currentBranch = readCurrentBranch();
+            ObjectStore objects = objects();
+            Commit headCommit = readCommit(objects, readRef(head));
+
+            List<String> l = branchNames();
+            if (!l.contains(name)) {
+                throw error("No such branch exists.");
             }
-        }
-
-        LinkedList<String> headContents = new LinkedList<>();
-        for (int i = 0; i < headCommit.get(0).getCWD().size(); i += 1) {
-            headContents.add(headCommit.get(0).cwdCons().get(i));
-        }
 
-        LinkedList<String> allFileNamesEver = readObject(join(GITLET_DIR, "allFileNamesEver"), LinkedList.class);
-        for (int i = 0; i < plainFilenamesIn(CWD).size(); i += 1) {
-            if (!allFileNamesEver.contains(plainFilenamesIn(CWD).get(i))) {
-                continue;
+            if (name.equals(currentBranch)) {
+                throw error("No need to checkout the current branch.");
             }
-            String currentWDContents = readContentsAsString(join(CWD, plainFilenamesIn(CWD).get(i)));
-            if (!headContents.contains(currentWDContents)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                System.exit(0);
-            }
-        }
 
-        List<String> stage = plainFilenamesIn(join(GITLET_DIR, "stages"));
-        if (stage.size() > 0) {
-            System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-            System.exit(0);
-        }
+            Commit branchCommit = readCommit(objects, readRef(join(branches, name)));
 
-        // Perform the actual switch once all conditions are met
-        for (int i = 0; i < commitsInBranch.get(0).getFileList().size(); i += 1) {
-            if (currentWD.contains(commitsInBranch.get(0).getFileList().get(i).getName())) {
-                writeContents(join(CWD, commitsInBranch.get(0).getFileList().get(i).getName()), commitsInBranch.get(0).getBlob().get(i));
-            } else {
-                String oldFileNotInCWDName = commitsInBranch.get(0).getFileList().get(i).getName();
-                File oldFileNotInCWD = join(CWD, oldFileNotInCWDName);
-                try {
-                    oldFileNotInCWD.createNewFile();
-                } catch (IOException error) {
-                    System.out.println("Error");
-                }
-                writeContents(oldFileNotInCWD, commitsInBranch.get(0).getBlob().get(i));
-            }
-        }
-
-        List<String> newWD = commitsInBranch.get(0).getCWD();
-        for (int i = 0; i < currentWD.size(); i += 1) {
-            if (!newWD.contains(currentWD.get(i))) {
-                join(CWD, currentWD.get(i)).delete();
-            }
+            checkoutCommit(objects, headCommit, branchCommit);
+            writeObject(currentBranchName, name);
+            writeRef(head, branchCommit.getHash());
         }
-
-        join(GITLET_DIR, "stages").delete();
-        join(GITLET_DIR, "stages").mkdir();
-        join(GITLET_DIR, "stageRemoval").delete();
-        join(GITLET_DIR, "stageRemoval").mkdir();
-        writeObject(currentBranchName, name);
-        writeObject(head, commitsInBranch);
     }
 
     /**
@@ -767,19 +1109,61 @@ public class Repository {
      *
      * @param name The name of the branch to be removed.
      */
-    public static void rmBranch(String name) {
-        File branches = Utils.join(GITLET_DIR, "branches");
-        File branchToDelete = Utils.join(branches, name);
-        String currentBranchName = Utils.readObject(Utils.join(GITLET_DIR, "currentBranch"), String.class);
-
-        if (!branchToDelete.exists()) {
-            System.out.println("A branch with that name does not exist.");
-        } else if (name.equals(currentBranchName)) {
-            System.out.println("Cannot remove the current branch.");
-        } else {
+    public void rmBranch(String name) {
+        try (Held held = writing("rmBranch")) {
+            File branches = Utils.join(gitletDir, "branches");
+            File branchToDelete = Utils.join(branches, name);
+            String currentBranchName = readCurrentBranch();
+
+            if (!branchToDelete.exists()) {
+                throw error("A branch with that name does not exist.");
+            } else if (name.equals(currentBranchName)) {
+                throw error("Cannot remove the current branch.");
+            }
             branchToDelete.delete();
         }
     }
 
+    /**
+     * Gathers every object of the repository into a single compressed pack file. Blobs and
+     * trees that appear at the same path are stored as deltas against their neighboring versions.
+     */
+    public void repack() {
+        try (Held held = writing("repack")) {
+            ObjectStore objects = objects();
+            List<Commit> commits = new ArrayList<>();
+            allCommits().forEach(commits::add);
+
+            // Key each object by its type and the first path it is found at, newest commits first
+            LinkedHashMap<String, String> hints = new LinkedHashMap<>();
+            for (Commit commit : commits) {
+                hints.put(commit.getHash(), Commit.TYPE);
+                addPathHints(objects, commit.getTree(), "", hints);
+            }
+            objects.repack(hints);
+        }
+    }
 
+    /**
+     * Records the path of the tree with the given ID, and of everything it contains, unless the
+     * tree was already seen.
+     *
+     * @param objects The object store holding the tree.
+     * @param treeID The ID of the tree.
+     * @param path The path of the tree, ending in "/" unless it is the top-level tree.
+     * @param hints Maps each object ID seen so far to its type and path.
+     */
+    private void addPathHints(ObjectStore objects, String treeID, String path,
+                                     Map<String, String> hints) {
+        if (hints.putIfAbsent(treeID, Tree.TYPE + " " + path) != null) {
+            return;
+        }
+        for (Map.Entry<String, Tree.Entry> e : Tree.read(objects, treeID).entries().entrySet()) {
+            if (e.getValue().isTree) {
+                addPathHints(objects, e.getValue().id, path + e.getKey() + "/", hints);
+            } else {
+                hints.putIfAbsent(e.getValue().id, ObjectStore.BLOB + " " + path + e.getKey());
+            }
+        }
+    }
 }
@@ -0,0 +1,199 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Event;
+
+/** The differences between the head commit, the index and the working
+ *  directory, as reported by the status command.
+ *
+ *  All three are walked together in a single merge-join over their paths,
+ *  which each lists in sorted order, so every path is classified in one
+ *  step without any lookups. Files whose stat data matches their index
+ *  entry are not read. The others are hashed afterwards, in parallel; one
+ *  that turns out to be unchanged gets its entry refreshed, so that later
+ *  runs can skip it.
+ *
+ *  @author enmanuel hernandez
+ */
+public class Status {
+
+    /** The working directory. */
+    private final File root;
+    /** Files whose index entry differs from the head commit. */
+    private final List<String> staged = new ArrayList<>();
+    /** Files in the head commit with no index entry. */
+    private final List<String> removed = new ArrayList<>();
+    /** Files in the index whose working copy differs from their entry,
+     *  mapped to "modified" or "deleted". */
+    private final TreeMap<String, String> notStaged = new TreeMap<>();
+    /** Files in the working directory with no index entry. */
+    private final List<String> untracked = new ArrayList<>();
+    /** Tracked files that may have changed, with their current stat data
+     *  and the blob IDs of their entries. */
+    private final List<Index.Entry> dirty = new ArrayList<>();
+    /** Index entries whose stat data was found to be stale although
+     *  their contents are unchanged. */
+    private final List<Index.Entry> refreshed = new ArrayList<>();
+    /** The paths at which the index differs from the head commit, each
+     *  mapped to the blob ID the commit has there, or to null if none. */
+    private final TreeMap<String, String> differences = new TreeMap<>();
+
+    /** Compute the status of the working directory ROOT, whose files and
+     *  their stat data are WORKINGTREE, against the INDEX and the files
+     *  COMMITTED in the head commit, as paths and blob IDs sorted by path,
+     *  recording the hashing of files in EVENTS. */
+    @SuppressWarnings("try")
+    Status(File root, SortedMap<String, Index.Stat> workingTree, Index index,
+           Iterable<Map.Entry<String, String>> committed, Events events) {
+        this.root = root;
+        Iterator<Map.Entry<String, String>> heads = committed.iterator();
+        Iterator<Index.Entry> entries = index.entries().iterator();
+        Iterator<Map.Entry<String, Index.Stat>> files = workingTree.entrySet().iterator();
+        Map.Entry<String, String> head = next(heads);
+        Index.Entry entry = next(entries);
+        Map.Entry<String, Index.Stat> file = next(files);
+
+        while (head != null || entry != null || file != null) {
+            String path = null;
+            if (head != null) {
+                path = head.getKey();
+            }
+            if (entry != null && (path == null || entry.path.compareTo(path) < 0)) {
+                path = entry.path;
+            }
+            if (file != null && (path == null || file.getKey().compareTo(path) < 0)) {
+                path = file.getKey();
+            }
+
+            String headID = null;
+            if (head != null && head.getKey().equals(path)) {
+                headID = head.getValue();
+                head = next(heads);
+            }
+            Index.Entry pathEntry = null;
+            if (entry != null && entry.path.equals(path)) {
+                pathEntry = entry;
+                entry = next(entries);
+            }
+            Index.Stat stat = null;
+            if (file != null && file.getKey().equals(path)) {
+                stat = file.getValue();
+                file = next(files);
+            }
+            classify(index, path, headID, pathEntry, stat);
+        }
+
+        // Files that must be read to be compared are hashed on all cores
+        List<Index.Entry> hashed;
+        try (Trace.Span span = events.trace.span("hash changed files")) {
+            hashed = dirty.parallelStream()
+                .map(e -> new Index.Entry(e.path, e.stat,
+                                          hash(Utils.join(root, e.path), events), e.flags))
+                .collect(Collectors.toList());
+        }
+        for (Index.Entry current : hashed) {
+            if (current.id.equals(index.get(current.path).id)) {
+                refreshed.add(current);
+            } else {
+                notStaged.put(current.path, "modified");
+            }
+        }
+    }
+
+    /** Record the status of the file at PATH, given its blob ID HEADID in
+     *  the head commit, its ENTRY in INDEX and its STAT in the working
+     *  directory, each null where the file is absent. A tracked file that
+     *  may have changed is only queued to be hashed. */
+    private void classify(Index index, String path, String headID,
+                          Index.Entry entry, Index.Stat stat) {
+        if (entry == null) {
+            if (headID != null) {
+                removed.add(path);
+                differences.put(path, headID);
+            }
+            if (stat != null) {
+                untracked.add(path);
+            }
+            return;
+        }
+
+        if (!entry.id.equals(headID)) {
+            staged.add(path);
+            differences.put(path, headID);
+        }
+        if (stat == null) {
+            // Tracked files are reported even where they are ignored
+            File file = Utils.join(root, path);
+            if (file.isFile()) {
+                stat = Index.Stat.of(file.toPath());
+            }
+        }
+        if (stat == null) {
+            notStaged.put(path, "deleted");
+        } else if (!index.isClean(entry, stat)) {
+            dirty.add(new Index.Entry(path, stat, entry.id, entry.flags));
+        }
+    }
+
+    /** Returns the blob ID of the contents of FILE, recording the hashing
+     *  in EVENTS and its trace. */
+    private static String hash(File file, Events events) {
+        Event event = events.begin(Events.HASH);
+        String id = ObjectStore.blobID(file);
+        if (event != null || events.trace.enabled()) {
+            long length = file.length();
+            events.trace.count("files opened: working tree");
+            events.trace.count("bytes hashed", length);
+            if (event != null) {
+                Events.commit(event, length);
+            }
+        }
+        return id;
+    }
+
+    /** Returns the next element of ITERATOR, or null if there is none. */
+    private static <T> T next(Iterator<T> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /** Returns the files staged for addition, sorted by path. */
+    public List<String> staged() {
+        return staged;
+    }
+
+    /** Returns the files staged for removal, sorted by path. */
+    public List<String> removed() {
+        return removed;
+    }
+
+    /** Returns the tracked files whose changes are not staged, sorted by
+     *  path and each mapped to "modified" or "deleted". */
+    public Map<String, String> notStaged() {
+        return notStaged;
+    }
+
+    /** Returns the untracked files, sorted by path. */
+    public List<String> untracked() {
+        return untracked;
+    }
+
+    /** Returns the index entries to be refreshed with current stat data. */
+    List<Index.Entry> refreshed() {
+        return refreshed;
+    }
+
+    /** Returns the paths at which the index differs from the head commit,
+     *  each mapped to the blob ID the commit has there, or to null if
+     *  none. */
+    Map<String, String> differences() {
+        return differences;
+    }
+}
@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A record of where one invocation of Gitlet spent its time, printed when
+ *  it exits: a tree of timed spans, and counters of the work done.
+ *
+ *  Spans nest on the thread that opens them, and those with the same name
+ *  under the same parent are merged, so a span opened in a loop appears
+ *  once, with the number of times it was opened and their total time.
+ *  Counters, such as the objects read, the bytes hashed and the files
+ *  stat'ed and opened, may be added to from any thread.
+ *
+ *  Unlike the JFR {@link Events}, a trace needs no tools to read. Main
+ *  keeps one when given "--trace", or when the environment variable
+ *  GITLET_TRACE is "perf", and prints it on the standard error. A trace
+ *  that is not enabled records nothing and costs next to nothing.
+ *
+ *  @author enmanuel hernandez
+ */
+final class Trace {
+
+    /** A span of time, ended by closing it. */
+    interface Span extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /** A node of the tree of spans. */
+    private static class Node {
+        /** The name of the spans merged in this node. */
+        final String name;
+        /** The node holding this one, or null for the root. */
+        final Node parent;
+        /** The nodes of the spans opened within these, in order of first
+         *  opening, by name. */
+        final Map<String, Node> children = new LinkedHashMap<>();
+        /** The number of spans merged in this node. */
+        long calls;
+        /** Their total time, in nanoseconds. */
+        long nanos;
+
+        Node(String name, Node parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+    }
+
+    /** True iff this trace records anything. */
+    private final boolean enabled;
+    /** When this trace began, as by System.nanoTime. */
+    private final long start = System.nanoTime();
+    /** The root of the tree of spans, spanning the whole trace. */
+    private final Node root = new Node("total", null);
+    /** The innermost span open on each thread with any open. */
+    private final Map<Thread, Node> current = new ConcurrentHashMap<>();
+    /** The counters, by name. */
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    /** The span returned while not enabled. */
+    private final Span none = () -> { };
+
+    /** A trace recording its spans and counters iff ENABLED. */
+    Trace(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Returns true iff this trace records anything. */
+    boolean enabled() {
+        return enabled;
+    }
+
+    /** Returns a new span named NAME, nested in the innermost span open on
+     *  this thread, begun. */
+    Span span(String name) {
+        if (!enabled) {
+            return none;
+        }
+        Thread thread = Thread.currentThread();
+        Node node;
+        synchronized (this) {
+            Node parent = current.getOrDefault(thread, root);
+            node = parent.children.computeIfAbsent(name, n -> new Node(n, parent));
+            current.put(thread, node);
+        }
+        long begin = System.nanoTime();
+        return () -> {
+            long elapsed = System.nanoTime() - begin;
+            synchronized (this) {
+                node.calls += 1;
+                node.nanos += elapsed;
+                if (node.parent == root) {
+                    current.remove(thread);
+                } else {
+                    current.put(thread, node.parent);
+                }
+            }
+        };
+    }
+
+    /** Add N to the counter NAME. */
+    void count(String name, long n) {
+        if (enabled) {
+            counters.computeIfAbsent(name, c -> new LongAdder()).add(n);
+        }
+    }
+
+    /** Add one to the counter NAME. */
+    void count(String name) {
+        count(name, 1);
+    }
+
+    /** Print the spans and counters recorded so far on OUT, if enabled. */
+    synchronized void report(PrintStream out) {
+        if (!enabled) {
+            return;
+        }
+        root.calls = 1;
+        root.nanos = System.nanoTime() - start;
+        out.println("gitlet trace:");
+        out.printf("  %-48s %8s %12s%n", "span", "calls", "ms");
+        report(out, root, "  ");
+        out.printf("  %-48s %8s%n", "counter", "value");
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            out.printf("  %-48s %8d%n", counter.getKey(), counter.getValue().sum());
+        }
+        out.flush();
+    }
+
+    /** Print NODE and the nodes under it on OUT, indented by INDENT and
+     *  more. */
+    private static void report(PrintStream out, Node node, String indent) {
+        out.printf("%-50s %8d %12.3f%n", indent + node.name, node.calls, node.nanos / 1e6);
+        for (Node child : node.children.values()) {
+            report(out, child, indent + "  ");
+        }
+    }
+}
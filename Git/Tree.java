@@ -0,0 +1,294 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/** A directory snapshot: a sorted mapping from names to blob or tree IDs.
+ *
+ *  Trees are stored in the object store like blobs, under the SHA-1 of
+ *  their encoding. A commit refers to the single tree for the top of the
+ *  working directory. Because a tree's ID depends only on its contents, a
+ *  subdirectory that did not change between two commits keeps its ID, and
+ *  {@link #update} reuses it without reading or rewriting it.
+ *
+ *  Paths given to the static methods are relative to the top of the tree
+ *  and separated by '/'.
+ *
+ *  @author enmanuel hernandez
+ */
+class Tree {
+
+    /** The version of the encoding written by encode. */
+    static final int FORMAT_VERSION = 1;
+    /** The object type under which trees are stored. */
+    static final String TYPE = "tree";
+
+    /** One named entry of a tree. */
+    static class Entry {
+        /** True iff this entry names a subtree rather than a blob. */
+        final boolean isTree;
+        /** The ID of the blob or subtree. */
+        final String id;
+
+        Entry(boolean isTree, String id) {
+            this.isTree = isTree;
+            this.id = id;
+        }
+    }
+
+    /** The entries of this tree, sorted by name. */
+    private final TreeMap<String, Entry> entries;
+
+    /** An empty tree. */
+    Tree() {
+        this(new TreeMap<>());
+    }
+
+    private Tree(TreeMap<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /** Returns the entries of this tree, sorted by name. A tree read from
+     *  a store may be shared, so they must not be changed. */
+    Map<String, Entry> entries() {
+        return entries;
+    }
+
+    /** Returns an estimate of the bytes of heap this tree takes: each
+     *  entry's map node, name, Entry and 40-character ID. */
+    long weight() {
+        long weight = 64;
+        for (String name : entries.keySet()) {
+            weight += 200 + name.length();
+        }
+        return weight;
+    }
+
+    /* ENCODING */
+
+    /** Returns the binary encoding of this tree: a format byte, the entry
+     *  count, then for each entry a kind byte, its UTF-8 name and its raw
+     *  20-byte ID. */
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeByte(e.getValue().isTree ? 1 : 0);
+                out.writeInt(name.length);
+                out.write(name);
+                out.write(Utils.hexToBytes(e.getValue().id));
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding tree.");
+        }
+    }
+
+    /** Returns the tree whose encoding is BYTES. */
+    static Tree decode(byte[] bytes) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw Utils.error("Unsupported tree format %d.", version);
+            }
+            TreeMap<String, Entry> entries = new TreeMap<>();
+            int count = in.readInt();
+            byte[] raw = new byte[Commit.RAW_ID_LENGTH];
+            for (int i = 0; i < count; i += 1) {
+                boolean isTree = in.readUnsignedByte() == 1;
+                byte[] name = new byte[in.readInt()];
+                in.readFully(name);
+                in.readFully(raw);
+                entries.put(new String(name, StandardCharsets.UTF_8),
+                            new Entry(isTree, Utils.bytesToHex(raw)));
+            }
+            return new Tree(entries);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt tree.");
+        }
+    }
+
+    /* STORAGE */
+
+    /** Returns the tree stored in STORE under ID, decoded once and then
+     *  shared through the store's {@link ObjectCache}. */
+    static Tree read(ObjectStore store, String id) {
+        return store.cache().get(id, i -> decode(store.get(i)), Tree::weight);
+    }
+
+    /** Store this tree in STORE and return its ID. */
+    String write(ObjectStore store) {
+        return store.put(TYPE, encode());
+    }
+
+    /** Returns the ID of the tree obtained by applying CHANGES to the tree
+     *  stored in STORE under TREEID, writing any new trees to STORE. CHANGES
+     *  maps each affected path to its new blob ID, or to null if the path is
+     *  to be removed. Subtrees containing no changed path keep their IDs and
+     *  are not read; directories left empty are dropped. A path may change
+     *  from a file to a directory or back, given a change removing the old
+     *  file, or every file under the old directory. */
+    static String update(ObjectStore store, String treeID, Map<String, String> changes) {
+        return apply(store, treeID, changes).write(store);
+    }
+
+    /** Returns the tree obtained by applying CHANGES to the tree stored in
+     *  STORE under TREEID, or to an empty tree if TREEID is null, as for
+     *  update. The result itself is not written. */
+    private static Tree apply(ObjectStore store, String treeID, Map<String, String> changes) {
+        // A copy, since the tree read is shared through the cache
+        Tree tree = treeID == null ? new Tree()
+            : new Tree(new TreeMap<>(read(store, treeID).entries));
+        TreeMap<String, Map<String, String>> nested = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                if (change.getValue() == null) {
+                    // Only a file is removed here; a directory of the same name stays
+                    tree.entries.computeIfPresent(path, (name, e) -> e.isTree ? e : null);
+                } else {
+                    tree.entries.put(path, new Entry(false, change.getValue()));
+                }
+            } else {
+                nested.computeIfAbsent(path.substring(0, slash), k -> new TreeMap<>())
+                      .put(path.substring(slash + 1), change.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> dir : nested.entrySet()) {
+            Entry old = tree.entries.get(dir.getKey());
+            Tree subtree = apply(store, old != null && old.isTree ? old.id : null, dir.getValue());
+            if (subtree.entries.isEmpty()) {
+                // The directory is gone, but a file may have taken its name
+                if (old != null && old.isTree) {
+                    tree.entries.remove(dir.getKey());
+                }
+            } else {
+                tree.entries.put(dir.getKey(), new Entry(true, subtree.write(store)));
+            }
+        }
+        return tree;
+    }
+
+    /** Call VISITOR with the path, prefixed with PREFIX, and blob ID of
+     *  every file in the tree stored in STORE under TREEID, in path order
+     *  within each directory. Nothing is collected, so any number of files
+     *  can be visited. */
+    static void walk(ObjectStore store, String treeID, String prefix,
+                     BiConsumer<String, String> visitor) {
+        for (Map.Entry<String, Entry> e : read(store, treeID).entries.entrySet()) {
+            if (e.getValue().isTree) {
+                walk(store, e.getValue().id, prefix + e.getKey() + "/", visitor);
+            } else {
+                visitor.accept(prefix + e.getKey(), e.getValue().id);
+            }
+        }
+    }
+
+    /** Add to INTO the blob ID of every file in the tree stored in STORE
+     *  under TREEID, keyed by its path prefixed with PREFIX. */
+    static void flatten(ObjectStore store, String treeID, String prefix,
+                        Map<String, String> into) {
+        walk(store, treeID, prefix, into::put);
+    }
+
+    /** A difference between two trees: the blob IDs of the file at PATH
+     *  in each, null where the file is absent. */
+    static class Change {
+        /** The path of the file. */
+        final String path;
+        /** The blob ID of the file in the first tree, or null. */
+        final String oldID;
+        /** The blob ID of the file in the second tree, or null. */
+        final String newID;
+
+        Change(String path, String oldID, String newID) {
+            this.path = path;
+            this.oldID = oldID;
+            this.newID = newID;
+        }
+    }
+
+    /** Returns the files that differ between the trees stored in STORE
+     *  under OLDID and NEWID, with their paths prefixed with PREFIX.
+     *  Subtrees with the same ID in both are skipped without being read,
+     *  so the cost depends on the size of the difference, not of the
+     *  trees. Either ID may be null to stand for an empty tree. */
+    static List<Change> diff(ObjectStore store, String oldID, String newID, String prefix) {
+        List<Change> changes = new ArrayList<>();
+        diff(store, oldID, newID, prefix, changes);
+        return changes;
+    }
+
+    /** Add to CHANGES the differences between the trees under OLDID and
+     *  NEWID, as for diff. */
+    private static void diff(ObjectStore store, String oldID, String newID, String prefix,
+                             List<Change> changes) {
+        if (oldID != null && oldID.equals(newID)) {
+            return;
+        }
+        Map<String, Entry> olds = oldID == null ? Map.of() : read(store, oldID).entries;
+        Map<String, Entry> news = newID == null ? Map.of() : read(store, newID).entries;
+        TreeSet<String> names = new TreeSet<>(olds.keySet());
+        names.addAll(news.keySet());
+        for (String name : names) {
+            Entry o = olds.get(name);
+            Entry n = news.get(name);
+            String path = prefix + name;
+            String oldTree = o != null && o.isTree ? o.id : null;
+            String newTree = n != null && n.isTree ? n.id : null;
+            String oldBlob = o != null && !o.isTree ? o.id : null;
+            String newBlob = n != null && !n.isTree ? n.id : null;
+            if (oldTree != null || newTree != null) {
+                diff(store, oldTree, newTree, path + "/", changes);
+            }
+            if ((oldBlob != null || newBlob != null) && !Objects.equals(oldBlob, newBlob)) {
+                changes.add(new Change(path, oldBlob, newBlob));
+            }
+        }
+    }
+
+    /** Returns a map from the path of every file in the tree stored in
+     *  STORE under TREEID to its blob ID, sorted by path. */
+    static TreeMap<String, String> flatten(ObjectStore store, String treeID) {
+        TreeMap<String, String> files = new TreeMap<>();
+        flatten(store, treeID, "", files);
+        return files;
+    }
+
+    /** Returns the blob ID of the file at PATH in the tree stored in STORE
+     *  under TREEID, or null if there is no such file. */
+    static String lookup(ObjectStore store, String treeID, String path) {
+        String id = treeID;
+        int start = 0;
+        while (true) {
+            int slash = path.indexOf('/', start);
+            String name = slash < 0 ? path.substring(start) : path.substring(start, slash);
+            Entry e = read(store, id).entries.get(name);
+            if (e == null || e.isTree != (slash >= 0)) {
+                return null;
+            } else if (slash < 0) {
+                return e.id;
+            }
+            id = e.id;
+            start = slash + 1;
+        }
+    }
+}
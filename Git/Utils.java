@@ -15,7 +15,6 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -43,11 +42,7 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return bytesToHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -59,6 +54,29 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** The digits of a hexadecimal numeral. */
+    static final String HEX_DIGITS = "0123456789abcdef";
+
+    /** Returns the lower-case hexadecimal numeral for the bytes of RAW. */
+    static String bytesToHex(byte[] raw) {
+        char[] hex = new char[2 * raw.length];
+        for (int i = 0; i < raw.length; i += 1) {
+            hex[2 * i] = HEX_DIGITS.charAt((raw[i] >> 4) & 0xf);
+            hex[2 * i + 1] = HEX_DIGITS.charAt(raw[i] & 0xf);
+        }
+        return new String(hex);
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX. */
+    static byte[] hexToBytes(String hex) {
+        byte[] raw = new byte[hex.length() / 2];
+        for (int i = 0; i < raw.length; i += 1) {
+            raw[i] = (byte) ((Character.digit(hex.charAt(2 * i), 16) << 4)
+                             | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+        return raw;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
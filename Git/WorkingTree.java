@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** A snapshot of the files in a working directory and their stat data.
+ *
+ *  The directory is scanned on the common ForkJoin pool: every
+ *  subdirectory is scanned by a task of its own, and a directory with
+ *  more than CHUNK entries is split into tasks of at most CHUNK entries
+ *  each, so that both deep and wide trees are spread across all cores,
+ *  with idle workers stealing the remaining tasks. Each entry costs a
+ *  single stat call, which also tells files from directories. The
+ *  .gitlet directory at the top is skipped, and symbolic links and other
+ *  special files are skipped, as is everything matched by the rules of
+ *  the .gitletignore files: each such file is read when its directory is
+ *  listed, and an ignored directory is left out without being listed.
+ *
+ *  Commands take one snapshot and use it throughout, rather than listing
+ *  the directory again at every step.
+ *
+ *  @author enmanuel hernandez
+ */
+class WorkingTree {
+
+    /** The most directory entries a single task stats. */
+    static final int CHUNK = 256;
+
+    /** Returns the stat data of every file under ROOT that is not ignored,
+     *  keyed by its path relative to ROOT with '/' as separator and sorted
+     *  by path. */
+    static SortedMap<String, Index.Stat> scan(File root) {
+        ConcurrentSkipListMap<String, Index.Stat> files = new ConcurrentSkipListMap<>();
+        ForkJoinPool.commonPool().invoke(new Scan(root, "", null, 0, 0, null, files));
+        return files;
+    }
+
+    /** The task scanning the entries of one directory, or a range of them. */
+    private static class Scan extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /** The directory scanned. */
+        private final File dir;
+        /** The path of DIR relative to the top, ending in '/' unless empty. */
+        private final String prefix;
+        /** The names of the entries of DIR, or null if not yet listed. */
+        private final String[] names;
+        /** The range of NAMES scanned by this task. */
+        private final int from, to;
+        /** The ignore rules applying to DIR, or null if there are none,
+         *  not counting its own .gitletignore until it is listed. */
+        private final Ignore ignore;
+        /** The snapshot being built. */
+        private final ConcurrentSkipListMap<String, Index.Stat> files;
+
+        Scan(File dir, String prefix, String[] names, int from, int to, Ignore ignore,
+             ConcurrentSkipListMap<String, Index.Stat> files) {
+            this.dir = dir;
+            this.prefix = prefix;
+            this.names = names;
+            this.from = from;
+            this.to = to;
+            this.ignore = ignore;
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            if (names == null) {
+                String[] listed = dir.list();
+                if (listed != null) {
+                    Ignore rules = Arrays.asList(listed).contains(Ignore.FILE)
+                        ? Ignore.read(ignore, prefix, dir) : ignore;
+                    new Scan(dir, prefix, listed, 0, listed.length, rules, files).compute();
+                }
+                return;
+            }
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Scan(dir, prefix, names, from, mid, ignore, files),
+                          new Scan(dir, prefix, names, mid, to, ignore, files));
+                return;
+            }
+
+            List<Scan> subdirectories = new ArrayList<>();
+            for (int i = from; i < to; i += 1) {
+                String name = names[i];
+                if (prefix.isEmpty() && name.equals(".gitlet")) {
+                    continue;
+                }
+                File file = new File(dir, name);
+                Index.Stat stat;
+                try {
+                    stat = Index.Stat.of(file.toPath());
+                } catch (IllegalArgumentException excp) {
+                    // Removed since the directory was listed
+                    continue;
+                }
+                if (ignore != null && (stat.isFile() || stat.isDirectory())
+                    && ignore.isIgnored(prefix + name, stat.isDirectory())) {
+                    continue;
+                }
+                if (stat.isFile()) {
+                    files.put(prefix + name, stat);
+                } else if (stat.isDirectory()) {
+                    subdirectories.add(new Scan(file, prefix + name + "/", null, 0, 0,
+                                                ignore, files));
+                }
+            }
+            invokeAll(subdirectories);
+        }
+    }
+}
@@ -7,27 +7,47 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.security.Permission;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import static org.junit.Assert.*;
 
@@ -1481,4 +1501,965 @@ public class GitletTests {
         assertFileEquals(NOTF, "F.txt");
         assertFileEquals(G, "G.txt");
     }
+
+    @Test
+    public void test45_repackRestore() {
+        gitletCommand(new String[]{"init"}, "");
+        writeFile(WUG, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "version 1 of wug.txt"}, "");
+        writeFile(NOTWUG, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "version 2 of wug.txt"}, "");
+        gitletCommand(new String[]{"repack"}, "");
+        Matcher logMatch = gitletCommandP(new String[]{"log"}, """
+                ===
+                ${HEADER}
+                ${DATE}
+                version 2 of wug.txt
+                                
+                ===
+                ${HEADER}
+                ${DATE}
+                version 1 of wug.txt
+                                
+                ===
+                ${HEADER}
+                ${DATE}
+                initial commit
+                                
+                """
+                .replace("${HEADER}", "commit ([a-f0-9]+)")
+                .replace("${DATE}", DATE));
+        gitletCommand(new String[]{"restore", logMatch.group(2), "--", "wug.txt"}, "");
+        assertFileEquals(WUG, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "version 3 of wug.txt"}, "");
+        gitletCommand(new String[]{"repack"}, "");
+        gitletCommand(new String[]{"restore", logMatch.group(1), "--", "wug.txt"}, "");
+        assertFileEquals(NOTWUG, "wug.txt");
+    }
+
+    @Test
+    public void test46_binaryRestore() throws IOException {
+        byte[] contents = new byte[70000];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (byte) (i * 31 + i / 7);
+        }
+        gitletCommand(new String[]{"init"}, "");
+        Files.write(Path.of("bin.dat"), contents);
+        gitletCommand(new String[]{"add", "bin.dat"}, "");
+        gitletCommand(new String[]{"commit", "added binary file"}, "");
+        writeFile(WUG, "bin.dat");
+        gitletCommand(new String[]{"restore", "--", "bin.dat"}, "");
+        assertTrue("Restored binary file differs from the committed one",
+                Arrays.equals(contents, Files.readAllBytes(Path.of("bin.dat"))));
+        gitletCommand(new String[]{"rm", "bin.dat"}, "");
+        gitletCommand(new String[]{"add", "bin.dat"}, "");
+        assertTrue("Re-added binary file differs from the committed one",
+                Arrays.equals(contents, Files.readAllBytes(Path.of("bin.dat"))));
+    }
+
+    @Test
+    public void test47_unstagedStatus() {
+        i_setup2();
+        writeFile(NOTWUG, "f.txt");
+        deleteFile("g.txt");
+        writeFile(WUG, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        deleteFile("h.txt");
+        writeFile(WUG, "k.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                h.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+                f.txt (modified)
+                g.txt (deleted)
+                h.txt (deleted)
+
+                === Untracked Files ===
+                k.txt
+
+                """);
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"rm", "g.txt"}, "");
+        gitletCommand(new String[]{"rm", "h.txt"}, "");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                f.txt
+
+                === Removed Files ===
+                g.txt
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+                k.txt
+
+                """);
+    }
+
+    @Test
+    public void test48_subdirectories() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        Files.createDirectories(Path.of("sub", "dir"));
+        writeFile(WUG, "sub/dir/f.txt");
+        writeFile(NOTWUG, "sub/g.txt");
+        gitletCommand(new String[]{"add", "sub/dir/f.txt"}, "");
+        gitletCommand(new String[]{"add", "sub/g.txt"}, "");
+        gitletCommand(new String[]{"commit", "nested files"}, "");
+        writeFile(WUG, "sub/g.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+                sub/g.txt (modified)
+
+                === Untracked Files ===
+
+                """);
+        gitletCommand(new String[]{"restore", "--", "sub/g.txt"}, "");
+        assertFileEquals(NOTWUG, "sub/g.txt");
+        gitletCommand(new String[]{"rm", "sub/dir/f.txt"}, "");
+        assertFileDoesNotExist("sub/dir");
+        gitletCommand(new String[]{"commit", "removed f.txt"}, "");
+        Matcher logMatch = gitletCommandP(new String[]{"log"}, """
+                ===
+                ${HEADER}
+                ${DATE}
+                removed f.txt
+
+                ===
+                ${HEADER}
+                ${DATE}
+                nested files
+
+                ===
+                ${HEADER}
+                ${DATE}
+                initial commit
+
+                """
+                .replace("${HEADER}", "commit ([a-f0-9]+)")
+                .replace("${DATE}", DATE));
+        gitletCommand(new String[]{"reset", logMatch.group(2)}, "");
+        assertFileEquals(WUG, "sub/dir/f.txt");
+        assertFileEquals(NOTWUG, "sub/g.txt");
+    }
+
+    @Test
+    public void test49_addMany() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        Files.createDirectories(Path.of("sub", "dir"));
+        writeFile(WUG, "f.txt");
+        writeFile(NOTWUG, "g.md");
+        writeFile(WUG, "sub/h.txt");
+        writeFile(NOTWUG, "sub/dir/k.txt");
+        writeFile(WUG, "sub/dir/m.md");
+        gitletCommand(new String[]{"add", "f.txt", "nosuchfile.txt"},
+                      "File does not exist.");
+        gitletCommand(new String[]{"add", "*.md", "sub/dir"}, "");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                g.md
+                sub/dir/k.txt
+                sub/dir/m.md
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+                f.txt
+                sub/h.txt
+
+                """);
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"commit", "all files"}, "");
+        writeFile(NOTWUG, "f.txt");
+        writeFile(NOTWUG, "sub/h.txt");
+        gitletCommand(new String[]{"add", "**.txt"}, "");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                f.txt
+                sub/h.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test50_ignore() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        Files.createDirectories(Path.of("build", "classes"));
+        Files.createDirectories(Path.of("sub"));
+        writeFile(WUG, "build/classes/f.txt");
+        writeFile(WUG, "f.txt");
+        writeFile(WUG, "a.log");
+        writeFile(WUG, "keep.log");
+        writeFile(WUG, "sub/b.log");
+        writeFile(WUG, "sub/c.txt");
+        Files.writeString(Path.of(".gitletignore"), "# build output\nbuild/\n*.log\n!keep.log\n");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+                .gitletignore
+                f.txt
+                keep.log
+                sub/c.txt
+
+                """);
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"add", "a.log"}, "");
+        gitletCommand(new String[]{"commit", "ignore rules"}, "");
+        writeFile(NOTWUG, "a.log");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+                a.log (modified)
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test51_embeddedRepository() throws IOException {
+        Files.createDirectories(Path.of("embedded"));
+        gitlet.Repository repository = new gitlet.Repository(new File("embedded").getAbsoluteFile());
+        repository.init();
+        writeFile(WUG, "embedded/f.txt");
+        repository.stage("f.txt");
+        gitlet.Commit commit = repository.commit("added f");
+        List<String> messages = new ArrayList<>();
+        for (gitlet.Commit c : repository.log()) {
+            messages.add(c.getMessage());
+        }
+        assertEquals(List.of("added f", "initial commit"), messages);
+        List<String> found = new ArrayList<>();
+        assertEquals(1, repository.find("added f", found::add));
+        assertEquals(List.of(commit.getHash()), found);
+        assertEquals(commit.getHash(), repository.getCommit(commit.getHash().substring(0, 8)).getHash());
+        try {
+            repository.commit("nothing changed");
+            fail("Expected an empty commit to be refused");
+        } catch (gitlet.GitletException excp) {
+            assertEquals("No changes added to the commit.", excp.getMessage());
+        }
+        List.of(1, 2, 3, 4).parallelStream().forEach(i -> {
+            assertTrue(repository.status().staged().isEmpty());
+            assertEquals(2, repository.log().size());
+        });
+        assertFileDoesNotExist(".gitlet");
+    }
+
+    @Test
+    public void test52_batch() {
+        writeFile(WUG, "f.txt");
+        writeFile(NOTWUG, "g.txt");
+        InputStream stdin = System.in;
+        System.setIn(new ByteArrayInputStream((
+                "init\n"
+                + "add f.txt 'g.txt'\n"
+                + "# comment\n"
+                + "commit \"two files\"\n"
+                + "rm h.txt\n"
+                + "branch other\n"
+                + "rm f.txt\n").getBytes()));
+        try {
+            gitletCommand(new String[]{"--batch"}, "No reason to remove the file.");
+        } finally {
+            System.setIn(stdin);
+        }
+        assertFileDoesNotExist("f.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+                other
+
+                === Staged Files ===
+
+                === Removed Files ===
+                f.txt
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test52a_batchSwitchStaysClean() throws Exception {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "changed f"}, "");
+        // The status comes a little after the switch, once the files it wrote are no longer
+        // in the file system's current clock tick
+        PipedOutputStream commands = new PipedOutputStream();
+        InputStream stdin = System.in;
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        System.setIn(new PipedInputStream(commands));
+        System.setErr(new PrintStream(err));
+        Thread writer = new Thread(() -> {
+            try (commands) {
+                commands.write("switch other\n".getBytes());
+                Thread.sleep(100);
+                commands.write("status\n".getBytes());
+            } catch (IOException | InterruptedException excp) {
+                throw new RuntimeException(excp);
+            }
+        });
+        writer.start();
+        try {
+            gitletCommand(new String[]{"--trace", "--batch"}, """
+                    === Branches ===
+                    main
+                    *other
+
+                    === Staged Files ===
+
+                    === Removed Files ===
+
+                    === Modifications Not Staged For Commit ===
+
+                    === Untracked Files ===
+
+                    """);
+        } finally {
+            writer.join();
+            System.setIn(stdin);
+            System.setErr(stderr);
+        }
+        assertTrue(err.toString(), err.toString().contains("gitlet trace:"));
+        assertTrue(err.toString(), !err.toString().contains("files opened: working tree"));
+    }
+
+    @Test
+    public void test53_trace() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        writeFile(WUG, "f.txt");
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(err));
+        try {
+            gitletCommand(new String[]{"--trace", "add", "f.txt"}, "");
+        } finally {
+            System.setErr(stderr);
+        }
+        String trace = err.toString();
+        assertTrue(trace, trace.startsWith("gitlet trace:"));
+        assertTrue(trace, trace.matches("(?s).*\n +stage +1 .*"));
+        assertTrue(trace, trace.matches("(?s).*\n +bytes hashed +" + Files.size(WUG) + "\n.*"));
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                f.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test54_objectCacheBudget() throws Exception {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "changed f"}, "");
+        String log = gitletProcess(null, "log");
+        // With no room at all, every commit and tree is decoded afresh
+        String trace = gitletProcess("0", "--trace", "log");
+        assertTrue(trace, trace.startsWith(log));
+        assertTrue(trace, !trace.contains("object cache: hits"));
+        assertTrue(trace, trace.matches("(?s).*\n +object cache: misses +3\n.*"));
+        assertEquals("", gitletProcess("0", "switch", "other"));
+        assertFileEquals(WUG, "f.txt");
+        assertEquals("", gitletProcess("0", "switch", "main"));
+        assertFileEquals(WUG2, "f.txt");
+        // Room for about one object: each read evicts the one before
+        trace = gitletProcess("600", "--trace", "log");
+        assertTrue(trace, trace.startsWith(log));
+        assertTrue(trace, trace.matches("(?s).*\n +object cache: evictions +2\n.*"));
+        assertEquals("Bad GITLET_CACHE_BYTES: lots\n", gitletProcess("lots", "log"));
+    }
+
+    @Test
+    public void test55_statusReadsNoTrees() throws Exception {
+        i_setup2();
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"rm", "g.txt"}, "");
+        String status = """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                f.txt
+
+                === Removed Files ===
+                g.txt
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """;
+        // The index records how it differs from the head commit's tree, so status reads no
+        // tree, whether staged, unstaged, or back to the head
+        String trace = gitletProcess(null, "--trace", "status");
+        assertTrue(trace, trace.startsWith(status));
+        assertTrue(trace, !trace.contains("objects read: tree"));
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        trace = gitletProcess(null, "--trace", "status");
+        assertTrue(trace, trace.startsWith(status.replace("f.txt\n", "")));
+        assertTrue(trace, !trace.contains("objects read: tree"));
+    }
+
+    @Test
+    public void test56_fileReplacesDirectory() throws IOException {
+        String clean = """
+                === Branches ===
+                ${BRANCHES}
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """;
+        gitletCommand(new String[]{"init"}, "");
+        Files.createDirectories(Path.of("a"));
+        writeFile(WUG, "a/b");
+        gitletCommand(new String[]{"add", "a/b"}, "");
+        gitletCommand(new String[]{"commit", "a is a directory"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        // Directory to file
+        gitletCommand(new String[]{"rm", "a/b"}, "");
+        writeFile(NOTWUG, "a");
+        gitletCommand(new String[]{"add", "a"}, "");
+        gitletCommand(new String[]{"commit", "a is a file"}, "");
+        gitletCommand(new String[]{"status"}, clean.replace("${BRANCHES}", "*main\nother\n"));
+        writeFile(WUG, "a");
+        gitletCommand(new String[]{"restore", "--", "a"}, "");
+        assertFileEquals(NOTWUG, "a");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        assertFileEquals(WUG, "a/b");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        assertFileEquals(NOTWUG, "a");
+        // File to directory, with the index replacing the file's entry
+        deleteFile("a");
+        Files.createDirectories(Path.of("a"));
+        writeFile(WUG2, "a/c");
+        gitletCommand(new String[]{"add", "a/c"}, "");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+                other
+
+                === Staged Files ===
+                a/c
+
+                === Removed Files ===
+                a
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+        gitletCommand(new String[]{"commit", "a is a directory again"}, "");
+        gitletCommand(new String[]{"status"}, clean.replace("${BRANCHES}", "*main\nother\n"));
+        gitletCommand(new String[]{"switch", "other"}, "");
+        assertFileEquals(WUG, "a/b");
+        assertFileDoesNotExist("a/c");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        assertFileEquals(WUG2, "a/c");
+        assertFileDoesNotExist("a/b");
+    }
+
+    @Test
+    public void test57_tornJournal() throws IOException {
+        i_setup2();
+        writeFile(WUG, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        writeFile(WUG, "k.txt");
+        gitletCommand(new String[]{"add", "k.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add k"}, "");
+        // As if the last append had been cut short
+        try (FileChannel journal = FileChannel.open(Path.of(".gitlet", "allCommits"),
+                                                    StandardOpenOption.WRITE)) {
+            journal.truncate(journal.size() - 5);
+        }
+        gitletCommand(new String[]{"find", "Add k"}, "Found no commit with that message.\n");
+        writeFile(NOTWUG, "k.txt");
+        gitletCommand(new String[]{"add", "k.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change k"}, "");
+        // The torn record is dropped, and the global log is newest first
+        gitletCommandP(new String[]{"global-log"}, """
+                ===
+                ${COMMIT_HEAD}
+                Change k
+
+                ===
+                ${COMMIT_HEAD}
+                Add h
+
+                ===
+                ${COMMIT_HEAD}
+                Two files
+
+                ===
+                ${COMMIT_HEAD}
+                initial commit
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD));
+    }
+
+    @Test
+    public void test58_daemon() throws Exception {
+        i_setup2();
+        String status = """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                ${STAGED}
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """;
+        Process daemon = javaProcess("gitlet.Main", "daemon")
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        Path socket = Path.of(".gitlet", "daemon.sock");
+        SocketChannel idle = null;
+        try {
+            for (int i = 0; i < 300 && !Files.exists(socket); i += 1) {
+                Thread.sleep(100);
+            }
+            assertTrue("The daemon did not start", Files.exists(socket));
+            // A client sending nothing holds up no one else
+            idle = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            assertEquals(status.replace("${STAGED}", ""), gitletClient(null, "status"));
+            // A change made by another process is seen at once
+            writeFile(WUG, "h.txt");
+            assertEquals("", gitletProcess(null, "add", "h.txt"));
+            assertEquals(status.replace("${STAGED}", "h.txt\n"), gitletClient(null, "status"));
+            // A batch reads this process's standard input, so it is run here
+            assertEquals(status.replace("${STAGED}", "h.txt\n"),
+                         gitletClient("status\n", "--batch"));
+            Files.delete(socket);
+            assertTrue("The daemon did not stop", daemon.waitFor(10, TimeUnit.SECONDS));
+        } finally {
+            if (idle != null) {
+                idle.close();
+            }
+            daemon.destroy();
+        }
+    }
+
+    @Test
+    public void test59_flightRecorderEvents() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        writeFile(WUG, "f.txt");
+        Path dump = Files.createTempFile("gitlet-test", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                for (String event : new String[]{"gitlet.Command", "gitlet.ObjectWrite",
+                                                 "gitlet.RefUpdate"}) {
+                    recording.enable(event).withThreshold(Duration.ZERO);
+                }
+                recording.start();
+                gitletCommand(new String[]{"add", "f.txt"}, "");
+                gitletCommand(new String[]{"commit", "One file"}, "");
+                recording.stop();
+                recording.dump(dump);
+            }
+            List<String> commands = new ArrayList<>();
+            int blobs = 0, refUpdates = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+                switch (event.getEventType().getName()) {
+                case "gitlet.Command":
+                    commands.add(event.getString("operation"));
+                    break;
+                case "gitlet.ObjectWrite":
+                    if (event.getString("type").equals("blob")) {
+                        assertEquals(Files.size(WUG), event.getLong("bytes"));
+                        blobs += 1;
+                    }
+                    break;
+                case "gitlet.RefUpdate":
+                    refUpdates += 1;
+                    break;
+                default:
+                    break;
+                }
+            }
+            assertTrue("no stage command in " + commands, commands.contains("stage"));
+            assertTrue("no commit command in " + commands, commands.contains("commit"));
+            assertTrue("no blob written", blobs > 0);
+            assertTrue("no ref updated", refUpdates > 0);
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    @Test
+    public void test60_commitIdPrefixes() throws IOException {
+        i_setup2();
+        // Commit until two commits share their first digit
+        List<String> ids = new ArrayList<>();
+        ids.add(Files.readString(Path.of(".gitlet", "head")).trim());
+        String first = null, second = null;
+        for (int i = 0; second == null; i += 1) {
+            writeFile(i % 2 == 0 ? NOTWUG : WUG, "f.txt");
+            gitletCommand(new String[]{"add", "f.txt"}, "");
+            gitletCommand(new String[]{"commit", "Change " + i}, "");
+            String id = Files.readString(Path.of(".gitlet", "head")).trim();
+            for (String other : ids) {
+                if (other.charAt(0) == id.charAt(0)) {
+                    first = other;
+                    second = id;
+                }
+            }
+            ids.add(id);
+        }
+        int common = 0;
+        while (first.charAt(common) == second.charAt(common)) {
+            common += 1;
+        }
+        String ambiguous = second.substring(0, common);
+        gitletCommand(new String[]{"reset", ambiguous},
+                "Commit id " + ambiguous + " is ambiguous; use more digits.");
+        gitletCommand(new String[]{"restore", ambiguous, "--", "f.txt"},
+                "Commit id " + ambiguous + " is ambiguous; use more digits.");
+        // No prefix is shorter than one digit, and only digits can be one
+        gitletCommand(new String[]{"reset", ""}, "No commit with that id exists.");
+        gitletCommand(new String[]{"reset", "xyz"}, "No commit with that id exists.");
+        gitletCommand(new String[]{"reset", second + "0"}, "No commit with that id exists.");
+
+        int unique = common + 1;
+        for (String other : ids) {
+            while (!other.equals(second) && other.startsWith(second.substring(0, unique))) {
+                unique += 1;
+            }
+        }
+        gitletCommand(new String[]{"reset", first}, "");
+        gitletCommand(new String[]{"reset", second.substring(0, unique)}, "");
+        assertEquals(second, Files.readString(Path.of(".gitlet", "head")).trim());
+    }
+
+    @Test
+    public void test61_shardedObjects() throws Exception {
+        i_setup2();
+        Path objects = Path.of(".gitlet", "objects");
+        String blob = blobID(WUG);
+        String head = Files.readString(Path.of(".gitlet", "head")).trim();
+        for (String id : new String[]{blob, head}) {
+            assertTrue(id, Files.isRegularFile(objects.resolve(id.substring(0, 2)).resolve(id.substring(2))));
+        }
+        // Every loose object is kept in the subdirectory named by the first two digits of its ID
+        int loose = 0;
+        try (Stream<Path> files = Files.walk(objects)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                Path relative = objects.relativize(file);
+                assertTrue(relative.toString(), relative.getNameCount() == 2
+                        && relative.getName(0).toString().matches("[0-9a-f]{2}")
+                        && relative.getName(1).toString().matches("[0-9a-f]{38}"));
+                loose += 1;
+            }
+        }
+        // Two commits, their trees and two blobs
+        assertEquals(6, loose);
+        gitletCommand(new String[]{"restore", head.substring(0, 8), "--", "f.txt"}, "");
+    }
+
+    @Test
+    public void test62_largeFile() throws Exception {
+        gitletCommand(new String[]{"init"}, "");
+        // Larger than the heap of the processes that store and restore it
+        Path big = Path.of("big.txt");
+        Random random = new Random(62);
+        try (OutputStream out = Files.newOutputStream(big)) {
+            byte[] line = new byte[64];
+            for (int i = 0; i < (48 << 20) / line.length; i += 1) {
+                for (int j = 0; j < line.length - 1; j += 1) {
+                    line[j] = (byte) ('a' + random.nextInt(26));
+                }
+                line[line.length - 1] = '\n';
+                out.write(line);
+            }
+        }
+        String id = blobID(big);
+        String[][] commands = {{"add", "big.txt"}, {"commit", "Big file"}, {"restore", "--", "big.txt"}};
+        for (String[] command : commands) {
+            if (command[0].equals("restore")) {
+                Files.writeString(big, "changed\n");
+            }
+            ProcessBuilder builder = javaProcess("gitlet.Main", command);
+            builder.command().add(1, "-Xmx24m");
+            assertEquals(String.join(" ", command), "", output(builder.start(), null));
+        }
+        assertTrue(Files.isRegularFile(Path.of(".gitlet", "objects", id.substring(0, 2), id.substring(2))));
+        assertEquals(48L << 20, Files.size(big));
+        assertEquals(id, blobID(big));
+    }
+
+    @Test
+    public void test63_statCleanIndex() throws Exception {
+        gitletCommand(new String[]{"init"}, "");
+        writeFile(WUG, "f.txt");
+        writeFile(NOTWUG, "g.txt");
+        // Files last changed well before the index is written are clean by their stat data
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000);
+        Files.setLastModifiedTime(Path.of("f.txt"), past);
+        Files.setLastModifiedTime(Path.of("g.txt"), past);
+        gitletCommand(new String[]{"add", "f.txt", "g.txt"}, "");
+        assertTrue(Files.isRegularFile(Path.of(".gitlet", "index")));
+        assertTrue(!Files.exists(Path.of(".gitlet", "stages")));
+        assertTrue(!Files.exists(Path.of(".gitlet", "stageRemoval")));
+        gitletCommand(new String[]{"commit", "Two files"}, "");
+        String status = """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """;
+        String trace = gitletProcess(null, "--trace", "status");
+        assertTrue(trace, trace.startsWith(status));
+        assertTrue(trace, !trace.contains("files opened: working tree"));
+
+        // A file whose stat data changed is read, whether or not its contents did
+        byte[] changed = Files.readAllBytes(Path.of("f.txt"));
+        changed[0] ^= 1;
+        Files.write(Path.of("f.txt"), changed);
+        Files.setLastModifiedTime(Path.of("f.txt"), FileTime.fromMillis(past.toMillis() + 1000));
+        Files.setLastModifiedTime(Path.of("g.txt"), FileTime.fromMillis(past.toMillis() + 1000));
+        trace = gitletProcess(null, "--trace", "status");
+        assertTrue(trace, trace.startsWith(status.replace("Commit ===\n", "Commit ===\nf.txt (modified)\n")));
+        assertTrue(trace, trace.matches("(?s).*\n +files opened: working tree +2\n.*"));
+    }
+
+    @Test
+    public void test64_parallelScan() throws IOException {
+        gitletCommand(new String[]{"init"}, "");
+        // Enough nested directories for the scan to be split, with names that sort around '/'
+        List<String> paths = new ArrayList<>(List.of("a-b.txt", "a.txt", "a/b.txt", "a0.txt"));
+        for (int d = 0; d < 8; d += 1) {
+            for (int f = 0; f < 25; f += 1) {
+                paths.add("d" + d + "/sub" + f % 3 + "/f" + f + ".txt");
+            }
+        }
+        for (String path : paths) {
+            Files.createDirectories(Path.of(path).toAbsolutePath().getParent());
+            Files.writeString(Path.of(path), path + "\n");
+        }
+        paths.sort(null);
+        String status = """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+                ${MODIFIED}
+                === Untracked Files ===
+                ${UNTRACKED}
+                """;
+        String untracked = String.join("\n", paths) + "\n";
+        for (int i = 0; i < 3; i += 1) {
+            gitletCommand(new String[]{"status"},
+                    status.replace("${MODIFIED}", "").replace("${UNTRACKED}", untracked));
+        }
+
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"commit", "Many files"}, "");
+        StringBuilder modified = new StringBuilder();
+        for (int i = 0; i < paths.size(); i += 7) {
+            String path = paths.get(i);
+            if (i % 2 == 0) {
+                Files.writeString(Path.of(path), "changed\n", StandardOpenOption.APPEND);
+                modified.append(path).append(" (modified)\n");
+            } else {
+                Files.delete(Path.of(path));
+                modified.append(path).append(" (deleted)\n");
+            }
+        }
+        gitletCommand(new String[]{"status"},
+                status.replace("${MODIFIED}", modified).replace("${UNTRACKED}", ""));
+    }
+
+    @Test
+    public void test65_generator() throws Exception {
+        String[] options = {"--seed=65", "--files=40", "--files-per-directory=10", "--sizes=uniform:1:300",
+                            "--commits=4", "--churn=0.1", "--branches=2", "--branch-commits=2"};
+        String[] reports = new String[2];
+        for (int run = 0; run < 2; run += 1) {
+            List<String> args = new ArrayList<>(List.of("gen" + run));
+            args.addAll(List.of(options));
+            reports[run] = output(javaProcess("gitlet.Generator", args.toArray(new String[0])).start(), null);
+        }
+        // Each command is timed by phase, and the sizes of the result reported
+        for (String line : new String[]{"init\tinit\t1", "import\tadd\t1", "import\tcommit\t1",
+                                        "fork\tbranch\t2", "history\tcommit\t3", "switch\tswitch\t4",
+                                        "branch\tcommit\t4", "inspect\tstatus\t1", "inspect\tlog\t1"}) {
+            assertTrue(reports[0], reports[0].contains("\n" + line + "\t"));
+        }
+        Matcher working = Pattern.compile("\nworking\t(\\d+)\t\\d+\n").matcher(reports[0]);
+        assertTrue(reports[0], working.find());
+
+        // The same seed builds the same working tree, holding what the report counts
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(Path.of("gen0"))) {
+            walk.filter(file -> Files.isRegularFile(file) && !file.startsWith(Path.of("gen0", ".gitlet")))
+                    .forEach(files::add);
+        }
+        assertEquals(Integer.parseInt(working.group(1)), files.size());
+        for (Path file : files) {
+            Path other = Path.of("gen1").resolve(Path.of("gen0").relativize(file));
+            assertTrue(other.toString(), Arrays.equals(Files.readAllBytes(file), Files.readAllBytes(other)));
+        }
+        assertTrue(reports[1], reports[1].contains(working.group()));
+
+        // The repository is left on main, with nothing to commit
+        ProcessBuilder status = javaProcess("gitlet.Main", "status");
+        status.directory(new File("gen0"));
+        assertEquals("""
+                === Branches ===
+                branch1
+                branch2
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """, output(status.start(), null));
+    }
+
+    /** Returns the output, standard output then standard error, of the Gitlet command ARGS
+     *  run in a new process with GITLET_CACHE_BYTES set to BUDGET, unless it is null. */
+    private static String gitletProcess(String budget, String... args) throws Exception {
+        ProcessBuilder builder = javaProcess("gitlet.Main", args);
+        if (budget != null) {
+            builder.environment().put("GITLET_CACHE_BYTES", budget);
+        }
+        return output(builder.start(), null);
+    }
+
+    /** Returns the output, standard output then standard error, of the Gitlet client run in a
+     *  new process with arguments ARGS, given STDIN as its standard input. */
+    private static String gitletClient(String stdin, String... args) throws Exception {
+        return output(javaProcess("gitlet.Client", args).start(), stdin);
+    }
+
+    /** Returns a builder of a process running the class MAINCLASS with arguments ARGS, with the
+     *  test's class path and no Gitlet settings in its environment. */
+    private static ProcessBuilder javaProcess(String mainClass, String... args) {
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), mainClass));
+        command.addAll(List.of(args));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().remove("GITLET_TRACE");
+        builder.environment().remove("GITLET_CACHE_BYTES");
+        builder.redirectError(ProcessBuilder.Redirect.PIPE);
+        return builder;
+    }
+
+    /** Returns the output, standard output then standard error, of PROCESS, given STDIN as its
+     *  standard input, unless it is null, once it has finished. */
+    private static String output(Process process, String stdin) throws Exception {
+        try (var in = process.getOutputStream()) {
+            if (stdin != null) {
+                in.write(stdin.getBytes());
+            }
+        }
+        String out = new String(process.getInputStream().readAllBytes());
+        String err = new String(process.getErrorStream().readAllBytes());
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+        return out + err;
+    }
+
+    /** Returns the ID under which the contents of FILE are stored, the SHA-1 of a Git-style
+     *  blob header and the contents. */
+    private static String blobID(Path file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(("blob " + Files.size(file) + "\0").getBytes());
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
 }
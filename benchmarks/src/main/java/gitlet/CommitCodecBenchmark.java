@@ -0,0 +1,62 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The cost of encoding and decoding commits, as done whenever one is
+ *  written or read.
+ *
+ *  @author enmanuel hernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitCodecBenchmark {
+
+    /** The length of the commit message. */
+    @Param({"16", "1024"})
+    public int messageLength;
+
+    /** The commit encoded. */
+    private Commit commit;
+    /** Its encoding. */
+    private byte[] encoding;
+    /** Its ID. */
+    private String id;
+
+    @Setup
+    public void setUp() {
+        ArrayList<String> parents = new ArrayList<>();
+        parents.add(Utils.sha1("parent"));
+        String message = "m".repeat(messageLength);
+        commit = new Commit(message, 1_700_000_000_000L, "main", parents, Utils.sha1("tree"));
+        encoding = commit.encode();
+        id = ObjectStore.id(Commit.TYPE, encoding);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return commit.encode();
+    }
+
+    @Benchmark
+    public Commit decode() {
+        return Commit.decode(id, encoding);
+    }
+}
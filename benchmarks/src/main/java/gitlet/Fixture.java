@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Repositories of a given shape for the benchmarks to run against.
+ *
+ *  A repository of FILES files of FILESIZE bytes each, a hundred to a
+ *  directory, is committed once and then changed over COMMITS - 1 more
+ *  commits, each rewriting part of one file in a hundred. Contents and
+ *  changes come from a seeded generator, so the same parameters always
+ *  give the same repository.
+ *
+ *  @author enmanuel hernandez
+ */
+final class Fixture {
+
+    /** The most files kept in one directory. */
+    static final int FILES_PER_DIRECTORY = 100;
+    /** The length of each change made to a file, in bytes. */
+    static final int EDIT_LENGTH = 64;
+
+    /** Not instantiable. */
+    private Fixture() {
+    }
+
+    /** Returns the path of the Ith file of a repository. */
+    static String path(int i) {
+        return String.format("d%03d/f%05d.txt", i / FILES_PER_DIRECTORY, i);
+    }
+
+    /** Build in the empty directory DIR a repository of FILES files of
+     *  FILESIZE bytes with COMMITS commits, using SEED for its contents,
+     *  and return its commits, newest first. */
+    static List<Commit> build(File dir, int files, int commits, int fileSize, long seed)
+        throws IOException {
+        Random random = new Random(seed);
+        for (int i = 0; i < files; i += 1) {
+            Path file = dir.toPath().resolve(path(i));
+            Files.createDirectories(file.getParent());
+            Files.write(file, text(random, fileSize));
+        }
+
+        Repository repository = new Repository(dir);
+        repository.init();
+        repository.stage(".");
+        repository.commit("commit 0");
+        for (int c = 1; c < commits; c += 1) {
+            List<String> changed = new ArrayList<>();
+            for (int k = 0; k < Math.max(1, files / 100); k += 1) {
+                String path = path(random.nextInt(files));
+                edit(dir, path, random);
+                changed.add(path);
+            }
+            repository.stage(changed.toArray(new String[0]));
+            repository.commit("commit " + c);
+        }
+        return repository.log();
+    }
+
+    /** Overwrite part of the file at PATH in DIR with text from RANDOM. */
+    static void edit(File dir, String path, Random random) throws IOException {
+        Path file = dir.toPath().resolve(path);
+        byte[] contents = Files.readAllBytes(file);
+        byte[] change = text(random, Math.min(EDIT_LENGTH, contents.length));
+        int at = random.nextInt(contents.length - change.length + 1);
+        System.arraycopy(change, 0, contents, at, change.length);
+        Files.write(file, contents);
+    }
+
+    /** Returns LENGTH bytes of lines of random lower-case words. */
+    static byte[] text(Random random, int length) {
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i += 1) {
+            int r = random.nextInt(32);
+            text[i] = (byte) (r < 26 ? 'a' + r : r < 31 ? ' ' : '\n');
+        }
+        return text;
+    }
+
+    /** Delete DIR and everything in it. */
+    static void delete(File dir) throws IOException {
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException excp)
+                throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
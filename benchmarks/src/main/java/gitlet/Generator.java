@@ -0,0 +1,315 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/** Builds large synthetic repositories, timing the commands that build
+ *  them, to see how Gitlet scales.
+ *
+ *  Usage: java -cp benchmarks.jar gitlet.Generator DIR [--NAME=VALUE ...]
+ *
+ *  DIR must be new or empty. It is filled with FILES files, spread over
+ *  directories of FILES-PER-DIRECTORY, of sizes drawn from SIZES, which
+ *  are added and committed. COMMITS - 1 more commits follow on main, each
+ *  touching a CHURN fraction of the tracked files: most are edited in
+ *  place, and about one in ten are new files and one in ten are removed.
+ *  BRANCHES branches are forked from main at evenly spaced points of its
+ *  history, and BRANCH-COMMITS commits made on each after switching to
+ *  it. Then status and log are run on main, and with --repack=true the
+ *  objects are packed. Everything is drawn from a generator seeded with
+ *  SEED, so the same options always build the same repository.
+ *
+ *  Every command is run in process, through {@link Main#run}, against one
+ *  Repository, and its output discarded. On completion the time spent in
+ *  each command of each phase is printed, then the number of files and
+ *  bytes of the working directory and of .gitlet, both as tab-separated
+ *  tables to ease collecting results across runs.
+ *
+ *  SIZES is "fixed:N", "uniform:MIN:MAX" or "lognormal:MEDIAN:SIGMA", in
+ *  bytes; log-normal sizes are capped at MAX_FILE_SIZE.
+ *
+ *  @author enmanuel hernandez
+ */
+public class Generator {
+
+    /** The largest file generated, in bytes. */
+    static final int MAX_FILE_SIZE = 64 << 20;
+
+    /** The options and their defaults. */
+    private final Map<String, String> options = new LinkedHashMap<>();
+    /** The working directory of the repository built. */
+    private final File dir;
+    /** The source of everything generated. */
+    private final Random random;
+    /** The repository built. */
+    private final Repository repository;
+    /** The time spent in each command of each phase, by "PHASE COMMAND". */
+    private final Map<String, Timing> timings = new LinkedHashMap<>();
+    /** The files tracked by each branch. */
+    private final Map<String, List<String>> tracked = new LinkedHashMap<>();
+    /** The number of files generated so far, numbering the next one. */
+    private int generated;
+
+    /** The time spent running one command of one phase. */
+    private static class Timing {
+        /** The number of times the command was run. */
+        int count;
+        /** The total time it took, in nanoseconds. */
+        long nanos;
+    }
+
+    /** A generator building a repository in DIR, with the options given in
+     *  ARGS as "--NAME=VALUE". */
+    Generator(File dir, String... args) {
+        options.put("seed", "42");
+        options.put("files", "1000");
+        options.put("files-per-directory", "100");
+        options.put("sizes", "lognormal:4096:1.5");
+        options.put("commits", "100");
+        options.put("churn", "0.01");
+        options.put("branches", "4");
+        options.put("branch-commits", "10");
+        options.put("repack", "false");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = arg.startsWith("--") && eq > 2 ? arg.substring(2, eq) : null;
+            if (name == null || !options.containsKey(name)) {
+                throw Utils.error("Unknown option: %s", arg);
+            }
+            options.put(name, arg.substring(eq + 1));
+        }
+        this.dir = dir;
+        this.random = new Random(number("seed"));
+        this.repository = new Repository(dir);
+    }
+
+    /** Build a repository as described by ARGS, the directory and then the
+     *  options, and print the timings and sizes. */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args[0].startsWith("--")) {
+            System.err.println("Usage: java gitlet.Generator DIR [--NAME=VALUE ...]");
+            System.exit(2);
+        }
+        File dir = new File(args[0]);
+        try {
+            Generator generator = new Generator(dir, Arrays.copyOfRange(args, 1, args.length));
+            String[] list = dir.list();
+            if (list != null && list.length > 0) {
+                throw Utils.error("%s is not empty.", dir);
+            }
+            long start = System.nanoTime();
+            generator.generate();
+            generator.report(System.out, System.nanoTime() - start);
+        } catch (GitletException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Build the repository. */
+    void generate() throws IOException {
+        int files = (int) number("files");
+        int commits = (int) number("commits");
+        int branches = (int) number("branches");
+        int branchCommits = (int) number("branch-commits");
+        double churn = Double.parseDouble(options.get("churn"));
+        if (files < 1 || commits < 1 || branches < 0 || branchCommits < 0 || churn < 0) {
+            throw Utils.error("Counts must be positive.");
+        }
+        Files.createDirectories(dir.toPath());
+
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            run("init", "init");
+            List<String> main = new ArrayList<>();
+            for (int i = 0; i < files; i += 1) {
+                main.add(create());
+            }
+            tracked.put("main", main);
+            run("import", "add", ".");
+            run("import", "commit", "import");
+
+            int forked = 0;
+            for (int c = 1; c < commits; c += 1) {
+                while (forked < branches && c >= (long) (forked + 1) * commits / (branches + 1)) {
+                    forked += 1;
+                    run("fork", "branch", "branch" + forked);
+                    tracked.put("branch" + forked, new ArrayList<>(main));
+                }
+                change("history", main, churn, "main " + c);
+            }
+            while (forked < branches) {
+                forked += 1;
+                run("fork", "branch", "branch" + forked);
+                tracked.put("branch" + forked, new ArrayList<>(main));
+            }
+
+            for (int b = 1; b <= branches; b += 1) {
+                String branch = "branch" + b;
+                run("switch", "switch", branch);
+                for (int c = 0; c < branchCommits; c += 1) {
+                    change("branch", tracked.get(branch), churn, branch + " " + c);
+                }
+                run("switch", "switch", "main");
+            }
+
+            run("inspect", "status");
+            run("inspect", "log");
+            if (Boolean.parseBoolean(options.get("repack"))) {
+                run("repack", "repack");
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    /** Make one commit, in PHASE and with MESSAGE, touching a CHURN fraction
+     *  of the files in TRACKED, which is updated to match. */
+    private void change(String phase, List<String> tracked, double churn, String message)
+        throws IOException {
+        int touches = Math.max(1, (int) Math.round(churn * tracked.size()));
+        Set<String> added = new LinkedHashSet<>();
+        Set<String> created = new LinkedHashSet<>();
+        for (int t = 0; t < touches; t += 1) {
+            int kind = random.nextInt(10);
+            if (kind == 8 || tracked.size() < 2) {
+                String path = create();
+                tracked.add(path);
+                added.add(path);
+                created.add(path);
+            } else if (kind == 9) {
+                String path = tracked.remove(random.nextInt(tracked.size()));
+                added.remove(path);
+                if (created.remove(path)) {
+                    Files.delete(dir.toPath().resolve(path));
+                } else {
+                    run(phase, "rm", path);
+                }
+            } else {
+                String path = tracked.get(random.nextInt(tracked.size()));
+                Fixture.edit(dir, path, random);
+                added.add(path);
+            }
+        }
+        if (!added.isEmpty()) {
+            List<String> args = new ArrayList<>();
+            args.add("add");
+            args.addAll(added);
+            run(phase, args.toArray(new String[0]));
+        }
+        run(phase, "commit", message);
+    }
+
+    /** Write a new file and return its path. */
+    private String create() throws IOException {
+        int perDirectory = (int) number("files-per-directory");
+        int i = generated;
+        generated += 1;
+        String path = String.format("d%04d/f%07d.txt", i / perDirectory, i);
+        Path file = dir.toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, Fixture.text(random, size()));
+        return path;
+    }
+
+    /** Returns the size of a new file, drawn from the distribution given
+     *  by the sizes option. */
+    private int size() {
+        String[] sizes = options.get("sizes").split(":");
+        try {
+            switch (sizes[0]) {
+            case "fixed":
+                if (sizes.length == 2) {
+                    return Integer.parseInt(sizes[1]);
+                }
+                break;
+            case "uniform":
+                if (sizes.length == 3) {
+                    int min = Integer.parseInt(sizes[1]);
+                    return min + random.nextInt(Integer.parseInt(sizes[2]) - min + 1);
+                }
+                break;
+            case "lognormal":
+                if (sizes.length == 3) {
+                    double median = Double.parseDouble(sizes[1]);
+                    double sigma = Double.parseDouble(sizes[2]);
+                    double size = median * Math.exp(sigma * random.nextGaussian());
+                    return (int) Math.min(MAX_FILE_SIZE, Math.round(size));
+                }
+                break;
+            default:
+                break;
+            }
+        } catch (IllegalArgumentException excp) {
+            // Reported below
+        }
+        throw Utils.error("Bad file sizes: %s", options.get("sizes"));
+    }
+
+    /** Returns the value of the numeric option NAME. */
+    private long number(String name) {
+        try {
+            return Long.parseLong(options.get(name));
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Bad number for %s: %s", name, options.get(name));
+        }
+    }
+
+    /** Run the command in ARGS as part of PHASE, timing it. */
+    private void run(String phase, String... args) {
+        long start = System.nanoTime();
+        Main.run(repository, args);
+        Timing timing = timings.computeIfAbsent(phase + " " + args[0], k -> new Timing());
+        timing.count += 1;
+        timing.nanos += System.nanoTime() - start;
+    }
+
+    /** Print the options, the timings of each phase and the sizes of the
+     *  repository on OUT, generation having taken ELAPSED nanoseconds. */
+    void report(PrintStream out, long elapsed) throws IOException {
+        StringBuilder header = new StringBuilder("#");
+        options.forEach((name, value) -> header.append(' ').append(name).append('=').append(value));
+        out.println(header);
+
+        out.println("phase\tcommand\tcount\ttotal_ms\tmean_ms");
+        for (Map.Entry<String, Timing> entry : timings.entrySet()) {
+            Timing timing = entry.getValue();
+            out.printf("%s\t%d\t%.3f\t%.3f%n", entry.getKey().replace(' ', '\t'), timing.count,
+                       timing.nanos / 1e6, timing.nanos / 1e6 / timing.count);
+        }
+        out.printf("total\t-\t-\t%.3f\t-%n", elapsed / 1e6);
+
+        out.println();
+        out.println("tree\tfiles\tbytes");
+        long[] all = usage(dir.toPath());
+        long[] gitlet = usage(repository.gitletDir().toPath());
+        out.printf("working\t%d\t%d%n", all[0] - gitlet[0], all[1] - gitlet[1]);
+        out.printf(".gitlet\t%d\t%d%n", gitlet[0], gitlet[1]);
+    }
+
+    /** Returns the number of files under DIR and their total size. */
+    private static long[] usage(Path dir) throws IOException {
+        long[] usage = new long[2];
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                usage[0] += 1;
+                usage[1] += file.toFile().length();
+            });
+        }
+        return usage;
+    }
+}
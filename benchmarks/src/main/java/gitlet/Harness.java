@@ -0,0 +1,258 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/** Replays the command sequences of the tests, and longer variants of
+ *  them, measuring every command, and compares the results with those of
+ *  an earlier run.
+ *
+ *  Usage: java -cp benchmarks.jar gitlet.Harness [--NAME=VALUE ...]
+ *
+ *  Each scenario of {@link Scenarios} whose name matches SCENARIOS, a
+ *  regular expression, is run WARMUP times and then RUNS times, each in a
+ *  new temporary directory, recording the metrics of {@link Session} for
+ *  each command. The median of each metric over the runs, for each
+ *  command and for the whole scenario, is written as JSON to OUT, or the
+ *  standard output if OUT is "-". The long scenarios are scaled by SCALE.
+ *
+ *  With a BASELINE, the JSON written by an earlier run, the totals of each
+ *  scenario, and with --steps=true those of each command as well, are
+ *  compared with the baseline's. A metric regressed if it grew by more
+ *  than its threshold, a fraction of the baseline's value; THRESHOLDS
+ *  overrides some of the defaults, as in "wall_ns=0.5,files_read=0.1".
+ *  Times must also have grown by at least MIN-TIME-NS, to ignore noise in
+ *  short commands. Regressions are listed on the standard error, and the
+ *  harness then exits with status 1.
+ *
+ *  @author enmanuel hernandez
+ */
+public class Harness {
+
+    /** The default threshold of each metric. Times are noisy. The files an
+     *  index refresh rereads depend on the clock, so file counts may vary a
+     *  little from run to run, but fsyncs should not change at all. */
+    static final String THRESHOLDS = "wall_ns=0.25,cpu_ns=0.25,alloc_bytes=0.10,"
+        + "files_read=0.05,files_written=0.05,bytes_read=0.10,bytes_written=0.10,fsyncs=0";
+
+    /** The options and their defaults. */
+    private final Map<String, String> options = new LinkedHashMap<>();
+    /** The threshold of each metric. */
+    private final Map<String, Double> thresholds = new LinkedHashMap<>();
+
+    /** A harness with the options given in ARGS as "--NAME=VALUE". */
+    Harness(String... args) {
+        options.put("scenarios", ".*");
+        options.put("runs", "5");
+        options.put("warmup", "3");
+        options.put("scale", "1");
+        options.put("out", "-");
+        options.put("baseline", "");
+        options.put("thresholds", "");
+        options.put("min-time-ns", "1000000");
+        options.put("steps", "false");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = arg.startsWith("--") && eq > 2 ? arg.substring(2, eq) : null;
+            if (name == null || !options.containsKey(name)) {
+                throw Utils.error("Unknown option: %s", arg);
+            }
+            options.put(name, arg.substring(eq + 1));
+        }
+        for (String spec : (THRESHOLDS + "," + options.get("thresholds")).split(",")) {
+            String[] threshold = spec.split("=");
+            if (spec.isEmpty()) {
+                continue;
+            } else if (threshold.length != 2 || !Arrays.asList(Session.METRICS).contains(threshold[0])) {
+                throw Utils.error("Bad threshold: %s", spec);
+            }
+            thresholds.put(threshold[0], Double.parseDouble(threshold[1]));
+        }
+    }
+
+    /** Run the harness with the options in ARGS. */
+    public static void main(String[] args) throws IOException {
+        try {
+            Harness harness = new Harness(args);
+            Map<String, Object> results = harness.run();
+            String json = Json.write(results);
+            if (harness.options.get("out").equals("-")) {
+                System.out.print(json);
+            } else {
+                Files.writeString(Path.of(harness.options.get("out")), json);
+            }
+            if (!harness.options.get("baseline").isEmpty()) {
+                Object baseline = Json.parse(Files.readString(Path.of(harness.options.get("baseline"))));
+                List<String> regressions = harness.compare(baseline, results);
+                regressions.forEach(System.err::println);
+                if (!regressions.isEmpty()) {
+                    System.exit(1);
+                }
+                System.err.println("No regressions.");
+            }
+        } catch (GitletException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /** Returns the results of running the scenarios. */
+    Map<String, Object> run() throws IOException {
+        int runs = number("runs");
+        int warmup = number("warmup");
+        if (runs < 1 || warmup < 0) {
+            throw Utils.error("There must be at least one run.");
+        }
+        Pattern selected = Pattern.compile(options.get("scenarios"));
+
+        List<Object> scenarios = new ArrayList<>();
+        for (Map.Entry<String, Scenarios.Script> scenario
+                 : Scenarios.all(number("scale")).entrySet()) {
+            if (!selected.matcher(scenario.getKey()).matches()) {
+                continue;
+            }
+            List<List<Map<String, Object>>> measured = new ArrayList<>();
+            for (int r = 0; r < warmup + runs; r += 1) {
+                List<Map<String, Object>> steps = runOnce(scenario.getValue());
+                if (r >= warmup) {
+                    measured.add(steps);
+                }
+            }
+
+            List<Map<String, Object>> totals = new ArrayList<>();
+            for (List<Map<String, Object>> steps : measured) {
+                Map<String, Object> total = new LinkedHashMap<>();
+                for (String metric : Session.METRICS) {
+                    total.put(metric, steps.stream().mapToLong(s -> (Long) s.get(metric)).sum());
+                }
+                totals.add(total);
+            }
+            List<Object> steps = new ArrayList<>();
+            for (int i = 0; i < measured.get(0).size(); i += 1) {
+                List<Map<String, Object>> runsOfStep = new ArrayList<>();
+                for (List<Map<String, Object>> run : measured) {
+                    runsOfStep.add(run.get(i));
+                }
+                Map<String, Object> step = new LinkedHashMap<>();
+                step.put("command", measured.get(0).get(i).get("command"));
+                step.putAll(median(runsOfStep));
+                steps.add(step);
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("name", scenario.getKey());
+            result.put("total", median(totals));
+            result.put("steps", steps);
+            scenarios.add(result);
+        }
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("runs", (long) runs);
+        results.put("warmup", (long) warmup);
+        results.put("scale", (long) number("scale"));
+        results.put("java", System.getProperty("java.version"));
+        results.put("scenarios", scenarios);
+        return results;
+    }
+
+    /** Returns the commands of one run of SCRIPT with their metrics. */
+    private static List<Map<String, Object>> runOnce(Scenarios.Script script) throws IOException {
+        File dir = Files.createTempDirectory("gitlet-harness").toFile();
+        try (Session session = new Session(dir)) {
+            script.run(session);
+            return session.finish();
+        } finally {
+            Fixture.delete(dir);
+        }
+    }
+
+    /** Returns the median of each metric over RUNS. */
+    private static Map<String, Object> median(List<Map<String, Object>> runs) {
+        Map<String, Object> median = new LinkedHashMap<>();
+        for (String metric : Session.METRICS) {
+            long[] values = runs.stream().mapToLong(r -> (Long) r.get(metric)).sorted().toArray();
+            median.put(metric, values[values.length / 2]);
+        }
+        return median;
+    }
+
+    /** Returns a line describing each regression of RESULTS from BASELINE. */
+    @SuppressWarnings("unchecked")
+    List<String> compare(Object baseline, Map<String, Object> results) {
+        Map<String, Map<String, Object>> before = new LinkedHashMap<>();
+        try {
+            for (Object scenario : (List<Object>) ((Map<String, Object>) baseline).get("scenarios")) {
+                Map<String, Object> s = (Map<String, Object>) scenario;
+                before.put((String) s.get("name"), s);
+            }
+        } catch (ClassCastException | NullPointerException excp) {
+            throw Utils.error("The baseline is not the output of the harness.");
+        }
+
+        List<String> regressions = new ArrayList<>();
+        for (Object scenario : (List<Object>) results.get("scenarios")) {
+            Map<String, Object> after = (Map<String, Object>) scenario;
+            String name = (String) after.get("name");
+            Map<String, Object> old = before.get(name);
+            if (old == null) {
+                continue;
+            }
+            compare(name, (Map<String, Object>) old.get("total"),
+                    (Map<String, Object>) after.get("total"), regressions);
+            if (!Boolean.parseBoolean(options.get("steps"))) {
+                continue;
+            }
+            List<Object> oldSteps = (List<Object>) old.get("steps");
+            List<Object> newSteps = (List<Object>) after.get("steps");
+            for (int i = 0; i < Math.min(oldSteps.size(), newSteps.size()); i += 1) {
+                Map<String, Object> oldStep = (Map<String, Object>) oldSteps.get(i);
+                Map<String, Object> newStep = (Map<String, Object>) newSteps.get(i);
+                if (!oldStep.get("command").equals(newStep.get("command"))) {
+                    regressions.add(String.format("%s: the commands differ from the baseline's"
+                                                  + " from step %d on", name, i));
+                    break;
+                }
+                compare(String.format("%s step %d (%s)", name, i, newStep.get("command")),
+                        oldStep, newStep, regressions);
+            }
+        }
+        return regressions;
+    }
+
+    /** Add to REGRESSIONS a line for each metric of AFTER, the metrics of
+     *  WHAT, that regressed from BEFORE. */
+    private void compare(String what, Map<String, Object> before, Map<String, Object> after,
+                         List<String> regressions) {
+        long minTime = Long.parseLong(options.get("min-time-ns"));
+        for (String metric : Session.METRICS) {
+            if (!(before.get(metric) instanceof Number)) {
+                continue;
+            }
+            long old = ((Number) before.get(metric)).longValue();
+            long now = ((Number) after.get(metric)).longValue();
+            boolean time = metric.endsWith("_ns");
+            if (now > old * (1 + thresholds.get(metric)) && now > old
+                && (!time || now - old >= minTime)) {
+                regressions.add(String.format("%s: %s went from %d to %d (%+.1f%%)", what, metric,
+                                              old, now, old == 0 ? 100.0 : 100.0 * (now - old) / old));
+            }
+        }
+    }
+
+    /** Returns the value of the numeric option NAME. */
+    private int number(String name) {
+        try {
+            return Integer.parseInt(options.get(name));
+        } catch (NumberFormatException excp) {
+            throw Utils.error("Bad number for %s: %s", name, options.get(name));
+        }
+    }
+}
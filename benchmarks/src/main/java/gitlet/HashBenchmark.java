@@ -0,0 +1,51 @@
+package gitlet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The cost of hashing contents, as done for every object stored.
+ *
+ *  @author enmanuel hernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    /** The number of bytes hashed. */
+    @Param({"64", "4096", "1048576"})
+    public int size;
+
+    /** The contents hashed. */
+    private byte[] contents;
+
+    @Setup
+    public void setUp() {
+        contents = Fixture.text(new Random(42), size);
+    }
+
+    @Benchmark
+    public String sha1() {
+        return Utils.sha1(contents);
+    }
+
+    @Benchmark
+    public String blobID() {
+        return ObjectStore.blobID(contents);
+    }
+}
@@ -0,0 +1,229 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Just enough JSON for the results of {@link Harness}: objects are Maps
+ *  with String keys, arrays Lists, and numbers Longs when integral and
+ *  Doubles otherwise.
+ *
+ *  @author enmanuel hernandez
+ */
+final class Json {
+
+    /** The text parsed. */
+    private final String text;
+    /** The position of the next character to parse. */
+    private int pos;
+
+    /** A parser of TEXT. */
+    private Json(String text) {
+        this.text = text;
+    }
+
+    /** Returns VALUE as indented JSON. */
+    static String write(Object value) {
+        StringBuilder out = new StringBuilder();
+        write(out, value, "");
+        return out.append('\n').toString();
+    }
+
+    /** Append VALUE to OUT, its nested lines indented by INDENT and more. */
+    private static void write(StringBuilder out, Object value, String indent) {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            String inner = indent + "  ";
+            out.append('{');
+            String sep = "\n";
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                out.append(sep).append(inner);
+                writeString(out, entry.getKey().toString());
+                out.append(": ");
+                write(out, entry.getValue(), inner);
+                sep = ",\n";
+            }
+            out.append(map.isEmpty() ? "" : "\n" + indent).append('}');
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            String inner = indent + "  ";
+            out.append('[');
+            String sep = "\n";
+            for (Object element : list) {
+                out.append(sep).append(inner);
+                write(out, element, inner);
+                sep = ",\n";
+            }
+            out.append(list.isEmpty() ? "" : "\n" + indent).append(']');
+        } else if (value instanceof String) {
+            writeString(out, (String) value);
+        } else {
+            out.append(value);
+        }
+    }
+
+    /** Append S to OUT as a JSON string. */
+    private static void writeString(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < ' ') {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /** Returns the value of the JSON in TEXT. */
+    static Object parse(String text) {
+        Json parser = new Json(text);
+        Object value = parser.value();
+        parser.skipBlanks();
+        if (parser.pos != text.length()) {
+            throw parser.error();
+        }
+        return value;
+    }
+
+    /** Returns the value starting at the current position. */
+    private Object value() {
+        skipBlanks();
+        if (pos == text.length()) {
+            throw error();
+        }
+        char c = text.charAt(pos);
+        if (c == '{') {
+            Map<String, Object> map = new LinkedHashMap<>();
+            pos += 1;
+            if (!consume('}')) {
+                do {
+                    skipBlanks();
+                    String key = string();
+                    expect(':');
+                    map.put(key, value());
+                } while (consume(','));
+                expect('}');
+            }
+            return map;
+        } else if (c == '[') {
+            List<Object> list = new ArrayList<>();
+            pos += 1;
+            if (!consume(']')) {
+                do {
+                    list.add(value());
+                } while (consume(','));
+                expect(']');
+            }
+            return list;
+        } else if (c == '"') {
+            return string();
+        } else if (text.startsWith("true", pos)) {
+            pos += 4;
+            return true;
+        } else if (text.startsWith("false", pos)) {
+            pos += 5;
+            return false;
+        } else if (text.startsWith("null", pos)) {
+            pos += 4;
+            return null;
+        }
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+            pos += 1;
+        }
+        String number = text.substring(start, pos);
+        try {
+            if (number.matches("-?[0-9]+")) {
+                return Long.parseLong(number);
+            }
+            return Double.parseDouble(number);
+        } catch (NumberFormatException excp) {
+            pos = start;
+            throw error();
+        }
+    }
+
+    /** Returns the string starting at the current position. */
+    private String string() {
+        if (pos == text.length() || text.charAt(pos) != '"') {
+            throw error();
+        }
+        StringBuilder s = new StringBuilder();
+        for (pos += 1; pos < text.length(); pos += 1) {
+            char c = text.charAt(pos);
+            if (c == '"') {
+                pos += 1;
+                return s.toString();
+            } else if (c == '\\' && pos + 1 < text.length()) {
+                pos += 1;
+                char e = text.charAt(pos);
+                switch (e) {
+                case 'n':
+                    s.append('\n');
+                    break;
+                case 't':
+                    s.append('\t');
+                    break;
+                case 'r':
+                    s.append('\r');
+                    break;
+                case 'b':
+                    s.append('\b');
+                    break;
+                case 'f':
+                    s.append('\f');
+                    break;
+                case 'u':
+                    if (pos + 4 >= text.length()) {
+                        throw error();
+                    }
+                    s.append((char) Integer.parseInt(text.substring(pos + 1, pos + 5), 16));
+                    pos += 4;
+                    break;
+                default:
+                    s.append(e);
+                    break;
+                }
+            } else {
+                s.append(c);
+            }
+        }
+        throw error();
+    }
+
+    /** Skip any blanks at the current position, then the character C if it
+     *  is next, returning true iff it was. */
+    private boolean consume(char c) {
+        skipBlanks();
+        if (pos < text.length() && text.charAt(pos) == c) {
+            pos += 1;
+            return true;
+        }
+        return false;
+    }
+
+    /** Skip any blanks at the current position, then the character C, which
+     *  must be next. */
+    private void expect(char c) {
+        if (!consume(c)) {
+            throw error();
+        }
+    }
+
+    /** Skip any blanks at the current position. */
+    private void skipBlanks() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos += 1;
+        }
+    }
+
+    /** Returns an error reporting bad JSON at the current position. */
+    private GitletException error() {
+        return Utils.error("Bad JSON at offset %d.", pos);
+    }
+}
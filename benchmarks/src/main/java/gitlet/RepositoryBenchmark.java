@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The cost of the commands most often run, over repositories of various
+ *  sizes built by {@link Fixture}.
+ *
+ *  Every operation opens a new Repository, so that it reads the state it
+ *  needs from disk as a command run from the command line does, rather
+ *  than finding it cached by earlier operations. The commit benchmark
+ *  adds a commit per operation, so its repository grows as it runs.
+ *
+ *  @author enmanuel hernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    /** The number of files in the repository. */
+    @Param({"100", "5000"})
+    public int files;
+    /** The number of commits in the history of the main branch. */
+    @Param({"10", "200"})
+    public int commits;
+    /** The size of each file, in bytes. */
+    @Param({"256", "16384"})
+    public int fileSize;
+
+    /** The working directory of the repository. */
+    private File dir;
+    /** The abbreviated ID of a commit halfway through the history. */
+    private String shortID;
+    /** The generator of the changes committed. */
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("gitlet-benchmark").toFile();
+        List<Commit> history = Fixture.build(dir, files, commits, fileSize, 42);
+        shortID = history.get(history.size() / 2).getHash().substring(0, 8);
+        random = new Random(43);
+
+        // A branch one commit behind main, for switching back and forth
+        Repository repository = new Repository(dir);
+        repository.branch("other");
+        String path = Fixture.path(0);
+        Fixture.edit(dir, path, random);
+        repository.stage(path);
+        repository.commit("ahead of other");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixture.delete(dir);
+    }
+
+    @Benchmark
+    public Commit commit() throws IOException {
+        String path = Fixture.path(random.nextInt(files));
+        Fixture.edit(dir, path, random);
+        Repository repository = new Repository(dir);
+        repository.stage(path);
+        return repository.commit("benchmark");
+    }
+
+    @Benchmark
+    public Status status() {
+        return new Repository(dir).status();
+    }
+
+    @Benchmark
+    public void switchBranch() {
+        new Repository(dir).switchBranch("other");
+        new Repository(dir).switchBranch("main");
+    }
+
+    @Benchmark
+    public List<Commit> log() {
+        return new Repository(dir).log();
+    }
+
+    @Benchmark
+    public Commit resolveShortID() {
+        return new Repository(dir).getCommit(shortID);
+    }
+}
@@ -0,0 +1,287 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** The scenarios replayed by {@link Harness}. The first are the command
+ *  sequences of the tests in GitTests, without their checks; the "long"
+ *  ones repeat the same commands over larger histories and trees, scaled
+ *  by the harness's scale factor.
+ *
+ *  @author enmanuel hernandez
+ */
+final class Scenarios {
+
+    /** The contents of the test files used. */
+    static final String WUG = "This is a wug.\n", NOTWUG = "This is not a wug.\n",
+        WUG2 = "Another wug.\n", WUG3 = "And yet another wug.\n";
+
+    /** A scenario, run in a session in an empty directory. */
+    interface Script {
+        void run(Session session) throws IOException;
+    }
+
+    /** Not instantiable. */
+    private Scenarios() {
+    }
+
+    /** Returns the scenarios by name, with their long variants scaled by
+     *  SCALE. */
+    static Map<String, Script> all(int scale) {
+        Map<String, Script> scenarios = new LinkedHashMap<>();
+        scenarios.put("restore", Scenarios::restore);
+        scenarios.put("status", Scenarios::status);
+        scenarios.put("find", Scenarios::find);
+        scenarios.put("branches", Scenarios::branches);
+        scenarios.put("reset", Scenarios::reset);
+        scenarios.put("repack", Scenarios::repack);
+        scenarios.put("subdirectories", Scenarios::subdirectories);
+        scenarios.put("long-history", session -> longHistory(session, 100 * scale));
+        scenarios.put("long-tree", session -> longTree(session, 500 * scale));
+        scenarios.put("long-branches", session -> longBranches(session, 20 * scale));
+        return scenarios;
+    }
+
+    /** Init, then add f.txt and g.txt, as in the tests' i_setup1. */
+    private static void setup1(Session session) throws IOException {
+        session.gitlet("init");
+        session.write("f.txt", WUG);
+        session.write("g.txt", NOTWUG);
+        session.gitlet("add", "g.txt");
+        session.gitlet("add", "f.txt");
+    }
+
+    /** Setup1, then commit, as in the tests' i_setup2. */
+    private static void setup2(Session session) throws IOException {
+        setup1(session);
+        session.gitlet("commit", "Two files");
+    }
+
+    /** As test02_basicRestore, test03_basicLog and test04_prevRestore. */
+    private static void restore(Session session) throws IOException {
+        session.gitlet("init");
+        session.write("wug.txt", WUG);
+        session.gitlet("add", "wug.txt");
+        session.gitlet("commit", "added wug");
+        session.write("wug.txt", NOTWUG);
+        session.gitlet("restore", "--", "wug.txt");
+        session.write("wug.txt", NOTWUG);
+        session.gitlet("add", "wug.txt");
+        session.gitlet("commit", "changed wug");
+        String first = commits(session.gitlet("log"))[1];
+        session.gitlet("restore", first, "--", "wug.txt");
+        session.gitlet("log");
+    }
+
+    /** As test12_addStatus to test15_removeAddStatus, test22_removeDeletedFile
+     *  and test47_unstagedStatus. */
+    private static void status(Session session) throws IOException {
+        setup1(session);
+        session.gitlet("status");
+        session.gitlet("commit", "Two files");
+        session.gitlet("rm", "f.txt");
+        session.gitlet("status");
+        session.gitlet("add", "f.txt");
+        session.gitlet("status");
+        session.write("f.txt", NOTWUG);
+        session.delete("g.txt");
+        session.write("h.txt", WUG2);
+        session.gitlet("status");
+        session.gitlet("rm", "g.txt");
+        session.gitlet("add", "f.txt");
+        session.gitlet("status");
+        session.gitlet("commit", "Changed f.txt, removed g.txt");
+        session.gitlet("status");
+    }
+
+    /** As test23_globalLog and test25_successfulFind. */
+    private static void find(Session session) throws IOException {
+        setup2(session);
+        session.gitlet("rm", "f.txt");
+        session.gitlet("commit", "Remove one file");
+        session.write("f.txt", NOTWUG);
+        session.gitlet("add", "f.txt");
+        session.gitlet("commit", "Two files");
+        session.gitlet("log");
+        session.gitlet("global-log");
+        session.gitlet("find", "Two files");
+        session.gitlet("find", "initial commit");
+        session.gitlet("find", "Remove one file");
+        session.gitlet("find", "No such message");
+    }
+
+    /** As test30_branches and test30a_rmBranch. */
+    private static void branches(Session session) throws IOException {
+        session.gitlet("init");
+        session.gitlet("branch", "other");
+        session.write("f.txt", WUG);
+        session.write("g.txt", NOTWUG);
+        session.gitlet("add", "g.txt");
+        session.gitlet("add", "f.txt");
+        session.gitlet("commit", "Main two files");
+        session.gitlet("switch", "other");
+        session.write("f.txt", NOTWUG);
+        session.gitlet("add", "f.txt");
+        session.gitlet("commit", "Alternative file");
+        session.gitlet("switch", "main");
+        session.gitlet("switch", "other");
+        session.gitlet("switch", "main");
+        session.gitlet("rm-branch", "other");
+        session.gitlet("switch", "other");
+    }
+
+    /** As test37_reset1. */
+    private static void reset(Session session) throws IOException {
+        setup2(session);
+        session.gitlet("branch", "other");
+        session.write("h.txt", WUG2);
+        session.gitlet("add", "h.txt");
+        session.gitlet("rm", "g.txt");
+        session.gitlet("commit", "Add h.txt and remove g.txt");
+        session.gitlet("switch", "other");
+        session.gitlet("rm", "f.txt");
+        session.write("k.txt", WUG3);
+        session.gitlet("add", "k.txt");
+        session.gitlet("commit", "Add k.txt and remove f.txt");
+        String two = commits(session.gitlet("log"))[1];
+        session.gitlet("switch", "main");
+        String main1 = commits(session.gitlet("log"))[0];
+        session.write("m.txt", WUG);
+        session.gitlet("add", "m.txt");
+        session.gitlet("reset", two);
+        session.gitlet("status");
+        session.gitlet("log");
+        session.gitlet("switch", "other");
+        session.gitlet("log");
+        session.gitlet("switch", "main");
+        session.gitlet("log");
+        session.gitlet("reset", main1);
+        session.gitlet("log");
+    }
+
+    /** As test45_repackRestore. */
+    private static void repack(Session session) throws IOException {
+        session.gitlet("init");
+        session.write("wug.txt", WUG);
+        session.gitlet("add", "wug.txt");
+        session.gitlet("commit", "version 1 of wug.txt");
+        session.write("wug.txt", NOTWUG);
+        session.gitlet("add", "wug.txt");
+        session.gitlet("commit", "version 2 of wug.txt");
+        session.gitlet("repack");
+        String[] log = commits(session.gitlet("log"));
+        session.gitlet("restore", log[1], "--", "wug.txt");
+        session.gitlet("add", "wug.txt");
+        session.gitlet("commit", "version 3 of wug.txt");
+        session.gitlet("repack");
+        session.gitlet("restore", log[0], "--", "wug.txt");
+    }
+
+    /** As test48_subdirectories. */
+    private static void subdirectories(Session session) throws IOException {
+        session.gitlet("init");
+        session.write("sub/dir/f.txt", WUG);
+        session.write("sub/g.txt", NOTWUG);
+        session.gitlet("add", "sub/dir/f.txt");
+        session.gitlet("add", "sub/g.txt");
+        session.gitlet("commit", "nested files");
+        session.write("sub/g.txt", WUG);
+        session.gitlet("status");
+        session.gitlet("restore", "--", "sub/g.txt");
+        session.gitlet("rm", "sub/dir/f.txt");
+        session.gitlet("commit", "removed f.txt");
+        String[] log = commits(session.gitlet("log"));
+        session.gitlet("reset", log[1]);
+    }
+
+    /** COMMITS commits changing two files in turn, then the commands
+     *  walking the history. */
+    private static void longHistory(Session session, int commits) throws IOException {
+        setup2(session);
+        for (int c = 0; c < commits; c += 1) {
+            String file = c % 2 == 0 ? "f.txt" : "g.txt";
+            session.write(file, "version " + c + "\n" + WUG);
+            session.gitlet("add", file);
+            session.gitlet("commit", "version " + c + " of " + file);
+        }
+        String[] log = commits(session.gitlet("log"));
+        session.gitlet("global-log");
+        session.gitlet("find", "version " + commits / 2 + " of f.txt");
+        session.gitlet("status");
+        String middle = log[log.length / 2];
+        session.gitlet("restore", middle.substring(0, 8), "--", "f.txt");
+        session.gitlet("reset", middle.substring(0, 8));
+        session.gitlet("reset", log[0]);
+        session.gitlet("repack");
+        session.gitlet("log");
+        session.gitlet("restore", middle.substring(0, 8), "--", "g.txt");
+    }
+
+    /** A tree of FILES files in directories of 25, committed, changed and
+     *  switched between branches. */
+    private static void longTree(Session session, int files) throws IOException {
+        session.gitlet("init");
+        for (int i = 0; i < files; i += 1) {
+            session.write(treePath(i), "file " + i + "\n" + WUG);
+        }
+        session.gitlet("add", ".");
+        session.gitlet("status");
+        session.gitlet("commit", "all files");
+        session.gitlet("status");
+        session.gitlet("branch", "other");
+        for (int i = 0; i < files; i += 10) {
+            session.write(treePath(i), "file " + i + "\n" + NOTWUG);
+        }
+        session.gitlet("status");
+        session.gitlet("add", ".");
+        session.gitlet("commit", "a tenth changed");
+        for (int i = 1; i < files; i += 50) {
+            session.gitlet("rm", treePath(i));
+        }
+        session.gitlet("commit", "a fiftieth removed");
+        session.gitlet("switch", "other");
+        session.gitlet("status");
+        session.gitlet("switch", "main");
+        session.gitlet("repack");
+        session.gitlet("status");
+        session.gitlet("switch", "other");
+    }
+
+    /** Returns the path of the Ith file of the long tree. */
+    private static String treePath(int i) {
+        return String.format("d%02d/sub%d/f%05d.txt", i / 250, i / 25 % 10, i);
+    }
+
+    /** BRANCHES branches, each with a commit of its own, visited in turn. */
+    private static void longBranches(Session session, int branches) throws IOException {
+        setup2(session);
+        for (int b = 0; b < branches; b += 1) {
+            session.gitlet("branch", "b" + b);
+        }
+        for (int b = 0; b < branches; b += 1) {
+            session.gitlet("switch", "b" + b);
+            session.write("b" + b + ".txt", WUG3);
+            session.gitlet("add", "b" + b + ".txt");
+            session.gitlet("commit", "branch b" + b);
+        }
+        session.gitlet("status");
+        for (int b = 0; b < branches; b += 1) {
+            session.gitlet("switch", "b" + b);
+        }
+        session.gitlet("switch", "main");
+        session.gitlet("global-log");
+        for (int b = 0; b < branches; b += 1) {
+            session.gitlet("rm-branch", "b" + b);
+        }
+    }
+
+    /** Returns the IDs of the commits listed by the output LOG of log, in
+     *  order. */
+    private static String[] commits(String log) {
+        Matcher m = Pattern.compile("(?m)^commit ([0-9a-f]+)$").matcher(log);
+        return m.results().map(r -> r.group(1)).toArray(String[]::new);
+    }
+}
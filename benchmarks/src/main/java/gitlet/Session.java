@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jdk.jfr.AnnotationElement;
+import jdk.jfr.Event;
+import jdk.jfr.EventFactory;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/** One run of a scenario of {@link Harness}, in its own working directory,
+ *  measuring each Gitlet command it runs.
+ *
+ *  Commands run in process, each against a new Repository as a separate
+ *  invocation of the command line would, but without the sleeps the tests
+ *  need. For each command the session records its wall time, and the CPU
+ *  time and bytes allocated by the threads running it: the calling thread
+ *  and the common fork-join pool that add hashes files in. The files read
+ *  and written, the bytes read and written and the number of fsyncs come
+ *  from the JDK's own file I/O events, recorded by JFR with no threshold
+ *  while the session runs and matched to the command whose span they fall
+ *  in. Files the session itself writes, between commands, are not counted.
+ *  Reads of memory-mapped files, such as pack indexes, are not seen.
+ *
+ *  The span of each command is itself an event, made by an EventFactory as
+ *  Gitlet's own {@link Events} are.
+ *
+ *  @author enmanuel hernandez
+ */
+final class Session implements AutoCloseable {
+
+    /** The metrics recorded for each command, in the order reported. */
+    static final String[] METRICS = {
+        "wall_ns", "cpu_ns", "alloc_bytes", "files_read", "files_written",
+        "bytes_read", "bytes_written", "fsyncs",
+    };
+
+    /** The name of the event marking the span of each command. */
+    private static final String COMMAND_EVENT = "gitlet.harness.Command";
+
+    /** The working directory of the scenario. */
+    private final File dir;
+    /** The file I/O of the session. */
+    private final Recording recording = new Recording();
+    /** The thread management of the JVM, which measures threads' CPU time
+     *  and allocation. */
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    /** The commands run, each with its metrics and then "command" giving
+     *  its arguments. */
+    private final List<Map<String, Object>> steps = new ArrayList<>();
+    /** The factory of the events marking the span of each command, whose
+     *  one field is the number of the command in the session. */
+    private final EventFactory commands = EventFactory.create(
+        List.of(new AnnotationElement(Name.class, COMMAND_EVENT),
+                new AnnotationElement(Label.class, "Gitlet Command"),
+                new AnnotationElement(StackTrace.class, false)),
+        List.of(new ValueDescriptor(int.class, "step", List.of(
+            new AnnotationElement(Label.class, "Step")))));
+
+    /** A session working in the empty directory DIR. */
+    Session(File dir) {
+        this.dir = dir;
+        for (String event : new String[] {"jdk.FileRead", "jdk.FileWrite", "jdk.FileForce"}) {
+            recording.enable(event).withThreshold(Duration.ZERO).withoutStackTrace();
+        }
+        recording.enable(COMMAND_EVENT).withThreshold(Duration.ZERO);
+        recording.start();
+    }
+
+    /** Write CONTENTS to the file at PATH, creating its directory. */
+    void write(String path, String contents) throws IOException {
+        Path file = dir.toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, contents);
+    }
+
+    /** Delete the file at PATH. */
+    void delete(String path) throws IOException {
+        Files.delete(dir.toPath().resolve(path));
+    }
+
+    /** Run the Gitlet command in ARGS, measuring it, and return its output,
+     *  which for a failed command is its error message. */
+    String gitlet(String... args) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        Event event = commands.newEvent();
+        event.set(0, steps.size());
+        long[] before = usage();
+        long start = System.nanoTime();
+        event.begin();
+        try {
+            Main.run(new Repository(dir), args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            event.end();
+            long wall = System.nanoTime() - start;
+            long[] after = usage();
+            event.commit();
+            System.setOut(stdout);
+
+            Map<String, Object> step = new LinkedHashMap<>();
+            step.put("command", label(args));
+            step.put("wall_ns", wall);
+            step.put("cpu_ns", Math.max(0, after[0] - before[0]));
+            step.put("alloc_bytes", Math.max(0, after[1] - before[1]));
+            steps.add(step);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the command in ARGS as reported, with any commit IDs, which
+     *  differ from run to run, replaced by "ID". */
+    private static String label(String[] args) {
+        StringBuilder label = new StringBuilder();
+        for (String arg : args) {
+            label.append(label.length() == 0 ? "" : " ");
+            label.append(arg.matches("[0-9a-f]{6,40}") ? "ID" : arg);
+        }
+        return label.toString();
+    }
+
+    /** Returns the CPU time and bytes allocated so far by this thread and
+     *  the common fork-join pool. */
+    private long[] usage() {
+        long[] ids = threads.getAllThreadIds();
+        Set<Long> counted = new HashSet<>();
+        counted.add(Thread.currentThread().getId());
+        for (ThreadInfo info : threads.getThreadInfo(ids, 0)) {
+            if (info != null && info.getThreadName().startsWith("ForkJoinPool.commonPool")) {
+                counted.add(info.getThreadId());
+            }
+        }
+        long[] cpu = threads.getThreadCpuTime(ids);
+        long[] allocated = threads.getThreadAllocatedBytes(ids);
+        long[] usage = new long[2];
+        for (int i = 0; i < ids.length; i += 1) {
+            if (counted.contains(ids[i])) {
+                usage[0] += Math.max(0, cpu[i]);
+                usage[1] += Math.max(0, allocated[i]);
+            }
+        }
+        return usage;
+    }
+
+    /** Stop recording and return the commands run, with all their metrics
+     *  and in order. */
+    List<Map<String, Object>> finish() throws IOException {
+        recording.stop();
+        Path dump = Files.createTempFile("gitlet-harness", ".jfr");
+        try {
+            recording.dump(dump);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            Instant[] starts = new Instant[steps.size()];
+            Instant[] ends = new Instant[steps.size()];
+            for (RecordedEvent event : events) {
+                if (event.getEventType().getName().equals(COMMAND_EVENT)) {
+                    int step = event.getInt("step");
+                    starts[step] = event.getStartTime();
+                    ends[step] = event.getEndTime();
+                }
+            }
+
+            List<Set<String>> read = new ArrayList<>();
+            List<Set<String>> written = new ArrayList<>();
+            for (Map<String, Object> step : steps) {
+                read.add(new HashSet<>());
+                written.add(new HashSet<>());
+                for (String metric : new String[] {"bytes_read", "bytes_written", "fsyncs"}) {
+                    step.put(metric, 0L);
+                }
+            }
+            for (RecordedEvent event : events) {
+                int step = find(starts, ends, event.getStartTime());
+                if (step < 0) {
+                    continue;
+                }
+                Map<String, Object> metrics = steps.get(step);
+                switch (event.getEventType().getName()) {
+                case "jdk.FileRead":
+                    read.get(step).add(event.getString("path"));
+                    add(metrics, "bytes_read", Math.max(0, event.getLong("bytesRead")));
+                    break;
+                case "jdk.FileWrite":
+                    written.get(step).add(event.getString("path"));
+                    add(metrics, "bytes_written", event.getLong("bytesWritten"));
+                    break;
+                case "jdk.FileForce":
+                    add(metrics, "fsyncs", 1);
+                    break;
+                default:
+                    break;
+                }
+            }
+
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (int i = 0; i < steps.size(); i += 1) {
+                Map<String, Object> step = steps.get(i);
+                step.put("files_read", (long) read.get(i).size());
+                step.put("files_written", (long) written.get(i).size());
+                Map<String, Object> ordered = new LinkedHashMap<>();
+                ordered.put("command", step.get("command"));
+                for (String metric : METRICS) {
+                    ordered.put(metric, step.get(metric));
+                }
+                result.add(ordered);
+            }
+            return result;
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    /** Returns the index of the span, from STARTS to ENDS, holding TIME, or
+     *  -1 if there is none. The spans are in order and do not overlap. */
+    private static int find(Instant[] starts, Instant[] ends, Instant time) {
+        int lo = 0, hi = starts.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] == null || ends[mid] == null) {
+                return -1;
+            } else if (time.isBefore(starts[mid])) {
+                hi = mid - 1;
+            } else if (time.isAfter(ends[mid])) {
+                lo = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Add N to the METRIC of METRICS. */
+    private static void add(Map<String, Object> metrics, String metric, long n) {
+        metrics.put(metric, (Long) metrics.get(metric) + n);
+    }
+
+    @Override
+    public void close() {
+        recording.close();
+    }
+}